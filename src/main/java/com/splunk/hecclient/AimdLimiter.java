@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AimdLimiter adapts how many POSTs an indexer has in flight, and how many bytes per second are posted to it, to what
+ * the indexer sustains. It is shared by the channels of the indexer, so that a push back on any of them slows them
+ * all down. Both limits are cut by half when the indexer pushes back, on a 503 or on a request which fails or
+ * times out, and grow additively on POSTs which succeed without being slower than usual. The senders converge on the
+ * throughput the indexer sustains instead of going full blast until a 503 takes the indexer out of rotation for the
+ * whole back-off period.
+ * <p>
+ * The byte rate is not limited until the indexer first pushes back, it starts from half the throughput measured then.
+ * It is lifted again once it is more than twice the throughput, as it no longer binds then. Streaming batches do not
+ * know their length and only count against the concurrency.
+ * <p>
+ * hasCapacity() is lock free, it is called for every channel considered for every batch. The limits are checked when a
+ * channel is picked, so senders racing for the same indexer may exceed them by the number of senders for a moment.
+ * Senders waiting for room are told through the released callback whenever a POST finishes.
+ *
+ * @since 2.2.3
+ */
+final class AimdLimiter {
+    static final double DECREASE_FACTOR = 0.5;
+    // bytes per second added to the byte rate for every round of POSTs, a round being as many POSTs as the concurrency
+    static final double BYTE_RATE_INCREASE = 256 * 1024;
+    static final double MIN_BYTE_RATE = 64 * 1024;
+    // a POST slower than this many times the average latency does not grow the limits
+    private static final int SLOW_FACTOR = 2;
+    // push backs within this interval, typically from POSTs which were in flight together, are taken as a single one
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long THROUGHPUT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Runnable released;
+    private volatile int maxConcurrency;
+    private volatile double concurrency;
+    private volatile double byteRate; // 0 when not limited
+    private volatile double tokens; // bytes which may be posted as of refilledAt, below zero after a big batch
+    private volatile long refilledAt;
+    private long lastDecrease;
+    // throughput of the successful POSTs, measured over windows of THROUGHPUT_WINDOW_NANOS
+    private double throughput;
+    private long windowStart;
+    private long windowBytes;
+
+    AimdLimiter(final int maxConcurrency, final long now) {
+        this(maxConcurrency, now, null);
+    }
+
+    // released, if not null, is run whenever a POST finishes
+    AimdLimiter(final int maxConcurrency, final long now, final Runnable released) {
+        this.released = released;
+        this.maxConcurrency = Math.max(maxConcurrency, 1);
+        this.concurrency = this.maxConcurrency;
+        this.refilledAt = now;
+        this.windowStart = now;
+        this.lastDecrease = now - DECREASE_INTERVAL_NANOS;
+    }
+
+    // true when the limits leave room for another POST to the indexer
+    boolean hasCapacity(final long now) {
+        return hasCapacity(inFlight.get(), now);
+    }
+
+    boolean hasCapacity(final int inFlight, final long now) {
+        if (inFlight >= (int) concurrency) {
+            return false;
+        }
+
+        double rate = byteRate;
+        return rate == 0 || tokens + rate * (now - refilledAt) / TimeUnit.SECONDS.toNanos(1) > 0;
+    }
+
+    // another channel of the indexer, which may keep channelConcurrency POSTs in flight
+    synchronized void addChannel(final int channelConcurrency) {
+        maxConcurrency += Math.max(channelConcurrency, 1);
+        concurrency += Math.max(channelConcurrency, 1);
+    }
+
+    synchronized void posted(final long bytes, final long now) {
+        inFlight.incrementAndGet();
+        if (byteRate != 0) {
+            refill(now);
+            tokens -= bytes;
+        }
+    }
+
+    // a POST is over, whether it succeeded or not
+    void finished() {
+        inFlight.decrementAndGet();
+        if (released != null) {
+            released.run();
+        }
+    }
+
+    synchronized void succeeded(final long bytes, final long latency, final long averageLatency, final long now) {
+        windowBytes += bytes;
+        if (now - windowStart >= THROUGHPUT_WINDOW_NANOS) {
+            throughput = (double) windowBytes * TimeUnit.SECONDS.toNanos(1) / (now - windowStart);
+            windowStart = now;
+            windowBytes = 0;
+        }
+
+        if (averageLatency != 0 && latency > SLOW_FACTOR * averageLatency) {
+            return;
+        }
+
+        double current = concurrency;
+        concurrency = Math.min(current + 1 / current, maxConcurrency);
+        if (byteRate != 0) {
+            refill(now);
+            byteRate += BYTE_RATE_INCREASE / current;
+            if (throughput != 0 && byteRate > 2 * throughput) {
+                byteRate = 0;
+            }
+        }
+    }
+
+    synchronized void congested(final long now) {
+        if (now - lastDecrease < DECREASE_INTERVAL_NANOS) {
+            return;
+        }
+
+        lastDecrease = now;
+        concurrency = Math.max(concurrency * DECREASE_FACTOR, 1);
+        double rate = byteRate != 0 ? byteRate : throughput;
+        if (rate != 0) {
+            refill(now);
+            byteRate = Math.max(rate * DECREASE_FACTOR, MIN_BYTE_RATE);
+            tokens = Math.min(tokens, byteRate);
+        }
+    }
+
+    // whole POSTs the indexer may have in flight
+    int getConcurrency() {
+        return (int) concurrency;
+    }
+
+    int getInFlightRequests() {
+        return inFlight.get();
+    }
+
+    // bytes per second which may be posted to the indexer, 0 when not limited
+    double getByteRate() {
+        return byteRate;
+    }
+
+    // adds the bytes earned since refilledAt, up to one second worth of them
+    private void refill(final long now) {
+        double rate = byteRate;
+        if (rate != 0) {
+            tokens = Math.min(tokens + rate * (now - refilledAt) / TimeUnit.SECONDS.toNanos(1), rate);
+        }
+        refilledAt = now;
+    }
+}
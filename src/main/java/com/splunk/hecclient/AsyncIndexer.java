@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * AsyncIndexer is an IndexerInf which doesn't block the caller for the HTTP round trip. send() hands the POST
+ * over to a shared sender pool and returns right away, the outcome is reported through Poller.add() or
+ * Poller.fail() once the response arrives, so a true from send() only means the POST was handed over. Up to
+ * maxInFlight POSTs are pipelined on the channel, callers are blocked in send() when the channel is already saturated.
+ *
+ * @since 2.2.3
+ */
+final class AsyncIndexer implements IndexerInf {
+    private static final Logger log = LoggerFactory.getLogger(AsyncIndexer.class);
+
+    private final Indexer indexer;
+    private final HecChannel channel;
+    private final Poller poller;
+    private final ExecutorService sender;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    // AsyncIndexer takes over the channel of the indexer, it doesn't own the sender pool
+    public AsyncIndexer(Indexer indexer, Poller poller, ExecutorService sender, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new HecException("max in-flight requests should be greater than 0");
+        }
+
+        this.indexer = indexer;
+        this.poller = poller;
+        this.sender = sender;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.channel = indexer.getChannel();
+        this.channel.setIndexer(this);
+    }
+
+    public HecChannel getChannel() {
+        return channel;
+    }
+
+    public int getInFlightRequests() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // this method is multi-thread safe
+    @Override
+    public boolean send(final EventBatch batch) {
+        final HttpPost httpPost;
+        try {
+            httpPost = indexer.createHttpPost(batch);
+            inFlight.acquire();
+        } catch (HecException ex) {
+            poller.fail(channel, batch, ex);
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            poller.fail(channel, batch, ex);
+            return false;
+        }
+
+        final long bytes = batch.length();
+        channel.getStats().postStarted(bytes);
+        try {
+            sender.execute(() -> post(httpPost, batch, bytes));
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            channel.getStats().postFinished(bytes);
+            poller.fail(channel, batch, ex);
+            return false;
+        }
+        return true;
+    }
+
+    private void post(final HttpPost httpPost, final EventBatch batch, final long bytes) {
+        final ChannelStats stats = channel.getStats();
+        String resp;
+        try {
+            long start = System.nanoTime();
+            resp = indexer.executeHttpRequest(httpPost);
+            stats.postSucceeded(batch, bytes, System.nanoTime() - start);
+        } catch (HecException ex) {
+            stats.postFailed(batch, ex);
+            poller.fail(channel, batch, ex);
+            return;
+        } catch (RuntimeException ex) {
+            // nobody waits on the sender pool, a batch which is not reported here would never be acked nor retried
+            HecException failure = new HecException("encountered exception when post data", ex);
+            stats.postFailed(batch, failure);
+            poller.fail(channel, batch, failure);
+            return;
+        } finally {
+            inFlight.release();
+            stats.postFinished(bytes);
+        }
+
+        poller.stickySessionHandler(channel);
+        poller.add(channel, batch, resp);
+        log.debug("sent {} events to splunk through channel={} indexer={}", batch.size(), channel.getId(), getBaseUrl());
+    }
+
+    @Override
+    public String executeHttpRequest(final HttpUriRequest req) {
+        return indexer.executeHttpRequest(req);
+    }
+
+    @Override
+    public boolean hasBackPressure() {
+        return indexer.hasBackPressure();
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return indexer.getBaseUrl();
+    }
+
+    @Override
+    public Header[] getHeaders() {
+        return indexer.getHeaders();
+    }
+
+    @Override
+    public String toString() {
+        return indexer.toString();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * ChannelField is the "hec-channel" field which tracks the channel json events are sent on. It is not serialized with
+ * the events, its encoding is inserted into the serialized events when their batch is written, so that a batch can
+ * be sent on another channel without serializing its events again.
+ *
+ * @since 2.2.3
+ */
+final class ChannelField {
+    static final String NAME = "hec-channel";
+
+    // where the field goes in a serialized event, depending on the fields of the event
+    static final int NO_FIELDS = 0; // a fields object holding the field is added before the closing brace
+    static final int EMPTY_FIELDS = 1; // the field is added to the empty fields object
+    static final int FIELDS = 2; // the field is added after the last field
+    static final int HELD = 3; // the event holds the field already, it is serialized along with the other fields
+
+    final String value;
+    private final Map<String, String> asMap;
+    private final SerializableString object; // ,"fields":{"hec-channel":"..."}
+    private final SerializableString first; // "hec-channel":"..."
+    private final SerializableString next; // ,"hec-channel":"..."
+
+    ChannelField(final String value) {
+        this.value = value;
+        this.asMap = Collections.singletonMap(NAME, value);
+
+        String field = "\"" + NAME + "\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(value)) + "\"";
+        this.object = prime(new SerializedString(",\"fields\":{" + field + "}"));
+        this.first = prime(new SerializedString(field));
+        this.next = prime(new SerializedString("," + field));
+    }
+
+    Map<String, String> asMap() {
+        return asMap;
+    }
+
+    // encoding of the field for an event whose fields are of the given kind, null when the event holds the field
+    SerializableString encodedFor(final int kind) {
+        switch (kind) {
+            case NO_FIELDS:
+                return object;
+            case EMPTY_FIELDS:
+                return first;
+            case FIELDS:
+                return next;
+            default:
+                return null;
+        }
+    }
+
+    int encodedLength(final int kind) {
+        SerializableString encoded = encodedFor(kind);
+        return encoded == null ? 0 : encoded.asUnquotedUTF8().length;
+    }
+
+    private static SerializedString prime(final SerializedString text) {
+        text.asUnquotedUTF8();
+        return text;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+/**
+ * ChannelSelector picks the channel a batch is sent to. Selectors are called concurrently by the threads sending
+ * batches, without any lock held, and must be multi-thread safe.
+ *
+ * @see     ChannelSelectors
+ * @since   2.2.3
+ */
+interface ChannelSelector {
+    /**
+     * @param channels  Channels of the load balancer, not empty. The array must not be modified.
+     * @return          The channel to send the batch to, null when none of the channels can take it.
+     */
+    HecChannel select(HecChannel[] channels);
+}
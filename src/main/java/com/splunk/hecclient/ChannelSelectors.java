@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ChannelSelectors resolves load balancing policy names to ChannelSelectors. Channels with back pressure or which are
+ * not available are skipped by every policy. With rate control, back pressure narrows the limits of a channel instead,
+ * channels at their limits are skipped. So are the channels of indexers whose circuit breaker is open.
+ * <ul>
+ *     <li>round_robin: channels take turns.</li>
+ *     <li>weighted: channels are picked at random, with a probability inversely proportional to the average latency
+ *     of their POSTs.</li>
+ *     <li>least_outstanding: the channel with the fewest bytes in flight is picked, then the one with the fewest
+ *     requests in flight.</li>
+ *     <li>power_of_two_choices: two channels are drawn at random and the one with the lower cost is picked. The cost
+ *     of a channel is the sum of the average latency of its POSTs and of its acks, times the POSTs in flight plus one.
+ *     Comparing two random channels rather than all of them keeps a slow indexer out of most of the traffic, without
+ *     sending all the batches to the one indexer which was the fastest a moment ago.</li>
+ * </ul>
+ *
+ * @since 2.2.3
+ */
+public final class ChannelSelectors {
+    public static final String ROUND_ROBIN = "round_robin";
+    public static final String WEIGHTED = "weighted";
+    public static final String LEAST_OUTSTANDING = "least_outstanding";
+    public static final String POWER_OF_TWO_CHOICES = "power_of_two_choices";
+
+    private ChannelSelectors() {
+    }
+
+    public static boolean isSupported(String name) {
+        try {
+            forName(name);
+            return true;
+        } catch (HecException ex) {
+            return false;
+        }
+    }
+
+    // selectors hold state, every load balancer gets its own
+    static ChannelSelector forName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new HecException("load balancing policy can't be empty");
+        }
+
+        String policy = name.trim();
+        if (ROUND_ROBIN.equalsIgnoreCase(policy)) {
+            return new RoundRobin();
+        } else if (WEIGHTED.equalsIgnoreCase(policy)) {
+            return new Weighted();
+        } else if (LEAST_OUTSTANDING.equalsIgnoreCase(policy)) {
+            return new LeastOutstanding();
+        } else if (POWER_OF_TWO_CHOICES.equalsIgnoreCase(policy)) {
+            return new PowerOfTwoChoices();
+        }
+        throw new HecException("unsupported load balancing policy " + policy);
+    }
+
+    static boolean isUsable(HecChannel channel) {
+        ChannelStats stats = channel.getStats();
+        if (!stats.allowsRequests()) {
+            return false;
+        }
+        if (stats.getLimiter() != null) {
+            return !channel.isNotAvailable() && stats.hasCapacity();
+        }
+        return !channel.hasBackPressure() && !channel.isNotAvailable();
+    }
+
+    private static final class RoundRobin implements ChannelSelector {
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public HecChannel select(final HecChannel[] channels) {
+            // every channel tried takes a turn, so that the turns skipped go to the next channels evenly
+            for (int tried = 0; tried < channels.length; tried++) {
+                HecChannel channel = channels[Math.floorMod(next.getAndIncrement(), channels.length)];
+                if (isUsable(channel)) {
+                    return channel;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Weighted implements ChannelSelector {
+        // latency of the channels which have no POST yet, so that they get traffic and a latency soon
+        private static final long MIN_LATENCY_NANOS = 1_000_000;
+
+        @Override
+        public HecChannel select(final HecChannel[] channels) {
+            double total = 0;
+            for (HecChannel channel: channels) {
+                if (isUsable(channel)) {
+                    total += weight(channel);
+                }
+            }
+            if (total == 0) {
+                return null;
+            }
+
+            // the weights read again may differ a bit, the last usable channel takes what is left
+            double point = ThreadLocalRandom.current().nextDouble(total);
+            HecChannel picked = null;
+            for (HecChannel channel: channels) {
+                if (isUsable(channel)) {
+                    picked = channel;
+                    point -= weight(channel);
+                    if (point < 0) {
+                        break;
+                    }
+                }
+            }
+            return picked;
+        }
+
+        private static double weight(final HecChannel channel) {
+            return 1.0 / Math.max(channel.getStats().getLatencyNanos(), MIN_LATENCY_NANOS);
+        }
+    }
+
+    private static final class LeastOutstanding implements ChannelSelector {
+        // channels are scanned from a different one every time, so that ties do not always go to the first channel
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public HecChannel select(final HecChannel[] channels) {
+            int start = Math.floorMod(next.getAndIncrement(), channels.length);
+            HecChannel picked = null;
+            long pickedBytes = 0;
+            int pickedRequests = 0;
+            for (int i = 0; i < channels.length; i++) {
+                HecChannel channel = channels[(start + i) % channels.length];
+                if (!isUsable(channel)) {
+                    continue;
+                }
+
+                ChannelStats stats = channel.getStats();
+                long bytes = stats.getInFlightBytes();
+                int requests = stats.getInFlightRequests();
+                if (picked == null || bytes < pickedBytes || bytes == pickedBytes && requests < pickedRequests) {
+                    picked = channel;
+                    pickedBytes = bytes;
+                    pickedRequests = requests;
+                }
+            }
+            return picked;
+        }
+    }
+
+    private static final class PowerOfTwoChoices implements ChannelSelector {
+        @Override
+        public HecChannel select(final HecChannel[] channels) {
+            HecChannel first;
+            HecChannel second;
+            if (channels.length == 1) {
+                first = channels[0];
+                second = first;
+            } else {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int i = random.nextInt(channels.length);
+                int j = random.nextInt(channels.length - 1);
+                first = channels[i];
+                second = channels[j < i ? j : j + 1];
+            }
+
+            boolean firstUsable = isUsable(first);
+            boolean secondUsable = isUsable(second);
+            if (firstUsable && secondUsable) {
+                return cost(second) < cost(first) ? second : first;
+            } else if (firstUsable) {
+                return first;
+            } else if (secondUsable) {
+                return second;
+            }
+            return cheapest(channels);
+        }
+
+        // both draws are unusable, look for the cheapest channel among all of them
+        private static HecChannel cheapest(final HecChannel[] channels) {
+            HecChannel picked = null;
+            long pickedCost = 0;
+            for (HecChannel channel: channels) {
+                if (isUsable(channel)) {
+                    long cost = cost(channel);
+                    if (picked == null || cost < pickedCost) {
+                        picked = channel;
+                        pickedCost = cost;
+                    }
+                }
+            }
+            return picked;
+        }
+
+        private static long cost(final HecChannel channel) {
+            ChannelStats stats = channel.getStats();
+            long latency = stats.getLatencyNanos() + stats.getAckLatencyNanos();
+            return latency * (stats.getInFlightRequests() + 1);
+        }
+    }
+}
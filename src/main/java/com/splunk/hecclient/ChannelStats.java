@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChannelStats tracks the load of a HecChannel: the POSTs, and their bytes, which are in flight on the channel, and
+ * moving averages of the latency of the POSTs which succeeded and of the time their acks took. ChannelSelectors read
+ * them to route batches away from busy or slow indexers. Reads are lock free.
+ * <p>
+ * The averages are decayed by the time elapsed since their last sample, with every sample weighing at least
+ * MIN_SAMPLE_WEIGHT. A latency above the average is taken as is, so that a slowing indexer is noticed on its first slow
+ * answer, while faster answers bring the average down within a few samples or a few DECAY_NANOS. The averages of a channel which is avoided, and gets no
+ * samples, decay as well, so that it is tried again after a while. The ack latency is only sampled when the ack poller
+ * runs, it decays over ACK_DECAY_POLLS poll intervals instead, so that it still counts between two polls.
+ *
+ * @since 2.2.3
+ */
+final class ChannelStats {
+    static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(2);
+    static final double MIN_SAMPLE_WEIGHT = 0.125;
+    static final int ACK_DECAY_POLLS = 3;
+    static final long DEFAULT_ACK_POLL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final Ewma postLatency = new Ewma(DECAY_NANOS);
+    private volatile Ewma ackLatency = new Ewma(ackDecayNanos(DEFAULT_ACK_POLL_INTERVAL_NANOS));
+    private volatile AimdLimiter limiter; // shared with the other channels of the indexer, null unless enabled
+    private volatile CircuitBreaker breaker; // shared with the other channels of the indexer, null unless enabled
+
+    void postStarted(final long bytes) {
+        inFlightRequests.incrementAndGet();
+        inFlightBytes.addAndGet(bytes);
+        AimdLimiter current = limiter;
+        if (current != null) {
+            current.posted(bytes, System.nanoTime());
+        }
+    }
+
+    void postFinished(final long bytes) {
+        inFlightRequests.decrementAndGet();
+        inFlightBytes.addAndGet(-bytes);
+        AimdLimiter current = limiter;
+        if (current != null) {
+            current.finished();
+        }
+    }
+
+    // the POST of batch, of bytes, succeeded in nanos
+    void postSucceeded(final EventBatch batch, final long bytes, final long nanos) {
+        AimdLimiter current = limiter;
+        if (current != null) {
+            current.succeeded(bytes, nanos, getLatencyNanos(), System.nanoTime());
+        }
+        CircuitBreaker currentBreaker = breaker;
+        if (currentBreaker != null) {
+            currentBreaker.recordSuccess(batch);
+        }
+        recordLatency(nanos);
+    }
+
+    // the batch could not be posted. Only the POSTs which got no answer, or a server error, count against the indexer,
+    // an indexer rejecting the batch, for an invalid index or token say, is working
+    void postFailed(final EventBatch batch, final HecException ex) {
+        CircuitBreaker current = breaker;
+        if (current == null) {
+            return;
+        }
+        if (ex instanceof HecStatusException && ((HecStatusException) ex).isClientError()) {
+            current.recordSuccess(batch);
+        } else {
+            current.recordFailure(batch, System.nanoTime());
+        }
+    }
+
+    // true unless the circuit breaker of the indexer holds batches back
+    boolean allowsRequests() {
+        CircuitBreaker current = breaker;
+        return current == null || current.allowsRequests(System.nanoTime());
+    }
+
+    // called for the channel picked for batch, false when another batch got the probe of the circuit breaker first
+    boolean tryAcquire(final EventBatch batch) {
+        CircuitBreaker current = breaker;
+        return current == null || current.tryAcquire(batch, System.nanoTime());
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    void setCircuitBreaker(final CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    // the indexer pushed back, with a 503 or a request which failed
+    void congested() {
+        AimdLimiter current = limiter;
+        if (current != null) {
+            current.congested(System.nanoTime());
+        }
+    }
+
+    // true when the limits of the indexer, if any, leave room for another POST
+    boolean hasCapacity() {
+        AimdLimiter current = limiter;
+        return current == null || current.hasCapacity(System.nanoTime());
+    }
+
+    AimdLimiter getLimiter() {
+        return limiter;
+    }
+
+    void setLimiter(final AimdLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    // set before the channel is used, the ack latency recorded so far is dropped
+    void setAckPollInterval(final long nanos) {
+        ackLatency = new Ewma(ackDecayNanos(nanos));
+    }
+
+    static long ackDecayNanos(final long ackPollIntervalNanos) {
+        return Math.max(ackPollIntervalNanos * ACK_DECAY_POLLS, DECAY_NANOS);
+    }
+
+    void recordLatency(final long nanos) {
+        postLatency.record(nanos, System.nanoTime());
+    }
+
+    void recordAckLatency(final long nanos) {
+        ackLatency.record(nanos, System.nanoTime());
+    }
+
+    // an ack has been waited for nanos so far, the ack latency is raised to it when it is below
+    void recordPendingAck(final long nanos) {
+        ackLatency.raise(nanos, System.nanoTime());
+    }
+
+    int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    // average latency of the POSTs, 0 when none has succeeded yet
+    long getLatencyNanos() {
+        return postLatency.get(System.nanoTime());
+    }
+
+    // average time from a POST to its ack, 0 when no ack has been received yet
+    long getAckLatencyNanos() {
+        return ackLatency.get(System.nanoTime());
+    }
+
+    // a peak sensitive, time decayed moving average
+    static final class Ewma {
+        private final long decayNanos;
+        // the value and the time it was taken at, replaced together so that readers never pair them up wrongly
+        private volatile Sample last = new Sample(0, 0);
+
+        Ewma(final long decayNanos) {
+            this.decayNanos = decayNanos;
+        }
+
+        synchronized void record(final long sample, final long now) {
+            Sample previous = last;
+            double current = previous.decayed(now, decayNanos);
+            if (sample >= current) {
+                last = new Sample(sample, now);
+            } else {
+                double weight = Math.max(1 - Math.exp(-(double) (now - previous.stamp) / decayNanos), MIN_SAMPLE_WEIGHT);
+                last = new Sample(current + (sample - current) * weight, now);
+            }
+        }
+
+        synchronized void raise(final long sample, final long now) {
+            if (sample > last.decayed(now, decayNanos)) {
+                last = new Sample(sample, now);
+            }
+        }
+
+        long get(final long now) {
+            return (long) last.decayed(now, decayNanos);
+        }
+    }
+
+    private static final class Sample {
+        final double value;
+        final long stamp;
+
+        Sample(final double value, final long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+
+        double decayed(final long now, final long decayNanos) {
+            long elapsed = now - stamp;
+            if (value == 0 || elapsed <= 0) {
+                return value;
+            }
+            return value * Math.exp(-(double) elapsed / decayNanos);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CircuitBreaker stops sending batches to an indexer which keeps failing them, rather than failing and resending
+ * batches until the next health check takes the indexer out. It is shared by the channels of the indexer.
+ * <p>
+ * The breaker opens after a number of consecutive failed POSTs, or when the share of failed POSTs among the last
+ * WINDOW_SIZE ones reaches the error rate. After openNanos, the breaker is half-open: a single batch is sent as a
+ * probe, the breaker closes if it succeeds and opens again if it fails. A probe which does not report back within
+ * openNanos is taken as lost and another batch is let through. The outcomes of the POSTs sent before the breaker
+ * opened, which may come in while it is open, are ignored.
+ *
+ * @since 2.2.3
+ */
+final class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    static final int CLOSED = 0;
+    static final int OPEN = 1;
+    static final int HALF_OPEN = 2;
+    // POSTs over which the error rate is computed, it is not checked before that many POSTs are known
+    static final int WINDOW_SIZE = 20;
+
+    private final String indexer;
+    private final int maxConsecutiveFailures; // 0 when not checked
+    private final int maxErrorPercent; // 0 when not checked
+    private final long openNanos;
+
+    private volatile int state = CLOSED;
+    private volatile long changedAt; // when the breaker opened, or when the probe was let through
+    private EventBatch probe; // the batch let through while half-open
+    private int consecutiveFailures;
+    // the last outcomes, true for failures, as a ring whose next slot is nextOutcome
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+    private int nextOutcome;
+    private int outcomeCount;
+    private int failureCount;
+
+    CircuitBreaker(final String indexer, final int maxConsecutiveFailures, final int maxErrorPercent,
+                   final long openNanos) {
+        this.indexer = indexer;
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+        this.maxErrorPercent = maxErrorPercent;
+        this.openNanos = openNanos;
+    }
+
+    static CircuitBreaker forConfig(final String indexer, final HecConfig config) {
+        if (config.getCircuitBreakerFailures() <= 0 && config.getCircuitBreakerErrorRate() <= 0) {
+            return null;
+        }
+        return new CircuitBreaker(indexer, config.getCircuitBreakerFailures(), config.getCircuitBreakerErrorRate(),
+                TimeUnit.SECONDS.toNanos(config.getCircuitBreakerOpenSeconds()));
+    }
+
+    // true when a batch may be sent, without letting it through, see tryAcquire()
+    boolean allowsRequests(final long now) {
+        return state == CLOSED || now - changedAt >= openNanos;
+    }
+
+    // lets batch through, when the breaker is not closed the caller sends it as the probe
+    synchronized boolean tryAcquire(final EventBatch batch, final long now) {
+        if (state == CLOSED) {
+            return true;
+        }
+        if (now - changedAt < openNanos) {
+            return false;
+        }
+
+        log.info("circuit breaker of indexer {} is half-open, sending a probe batch", indexer);
+        state = HALF_OPEN;
+        changedAt = now;
+        probe = batch;
+        return true;
+    }
+
+    synchronized void recordSuccess(final EventBatch batch) {
+        if (state != CLOSED) {
+            if (state == HALF_OPEN && batch == probe) {
+                log.info("probe batch succeeded, closing circuit breaker of indexer {}", indexer);
+                close();
+            }
+            return;
+        }
+
+        consecutiveFailures = 0;
+        record(false);
+    }
+
+    synchronized void recordFailure(final EventBatch batch, final long now) {
+        if (state != CLOSED) {
+            if (state == HALF_OPEN && batch == probe) {
+                log.warn("probe batch failed, opening circuit breaker of indexer {} again", indexer);
+                open(now);
+            }
+            return;
+        }
+
+        consecutiveFailures++;
+        record(true);
+        if (maxConsecutiveFailures > 0 && consecutiveFailures >= maxConsecutiveFailures) {
+            log.warn("{} consecutive batches failed, opening circuit breaker of indexer {}", consecutiveFailures, indexer);
+            open(now);
+        } else if (maxErrorPercent > 0 && outcomeCount == WINDOW_SIZE
+                && failureCount * 100 >= maxErrorPercent * WINDOW_SIZE) {
+            log.warn("{} of the last {} batches failed, opening circuit breaker of indexer {}",
+                    failureCount, WINDOW_SIZE, indexer);
+            open(now);
+        }
+    }
+
+    int getState() {
+        return state;
+    }
+
+    private void record(final boolean failure) {
+        if (outcomeCount < WINDOW_SIZE) {
+            outcomeCount++;
+        } else if (outcomes[nextOutcome]) {
+            failureCount--;
+        }
+        outcomes[nextOutcome] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        nextOutcome = (nextOutcome + 1) % WINDOW_SIZE;
+    }
+
+    private void open(final long now) {
+        state = OPEN;
+        changedAt = now;
+        probe = null;
+    }
+
+    private void close() {
+        state = CLOSED;
+        probe = null;
+        consecutiveFailures = 0;
+        Arrays.fill(outcomes, false);
+        nextOutcome = 0;
+        outcomeCount = 0;
+        failureCount = 0;
+    }
+}
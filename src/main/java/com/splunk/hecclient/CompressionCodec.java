@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CompressionCodec compresses event batch payloads before they are posted to HEC. Besides the built-in
+ * "gzip" codec, implementations can be plugged in through java.util.ServiceLoader by listing them in
+ * META-INF/services/com.splunk.hecclient.CompressionCodec, for instance to back gzip with a native deflater.
+ * Implementations must be multi-thread safe.
+ *
+ * @since 2.2.3
+ */
+public interface CompressionCodec {
+    // name used in "splunk.hec.compression.codec"
+    String getName();
+
+    // value of the Content-Encoding header sent along with the compressed payload
+    String getContentEncoding();
+
+    boolean isValidLevel(int level);
+
+    // wraps out in a compressing stream, closing the returned stream finishes the payload and closes out
+    OutputStream compress(OutputStream out, int level) throws IOException;
+}
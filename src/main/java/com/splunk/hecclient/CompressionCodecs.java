@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ServiceLoader;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CompressionCodecs resolves codec names to CompressionCodec implementations. Codecs registered through
+ * ServiceLoader take precedence over the built-in ones so that a native-backed gzip can replace the JDK one.
+ *
+ * @since 2.2.3
+ */
+public final class CompressionCodecs {
+    public static final String GZIP = "gzip";
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    static final CompressionCodec gzip = new GzipCodec();
+
+    private CompressionCodecs() {
+    }
+
+    public static CompressionCodec forName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new HecException("compression codec name can't be empty");
+        }
+
+        String codecName = name.trim();
+        for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class)) {
+            if (codec.getName().equalsIgnoreCase(codecName)) {
+                return codec;
+            }
+        }
+
+        if (GZIP.equalsIgnoreCase(codecName)) {
+            return gzip;
+        }
+        throw new HecException("unsupported compression codec " + codecName);
+    }
+
+    private static final class GzipCodec implements CompressionCodec {
+        private static final int BUFFER_SIZE = 8 * 1024;
+
+        @Override
+        public String getName() {
+            return GZIP;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return GZIP;
+        }
+
+        @Override
+        public boolean isValidLevel(int level) {
+            return level == Deflater.DEFAULT_COMPRESSION
+                    || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, final int level) throws IOException {
+            if (!isValidLevel(level)) {
+                throw new HecException("invalid gzip compression level " + level);
+            }
+
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+    }
+}
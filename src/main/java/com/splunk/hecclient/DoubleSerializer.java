@@ -1,7 +1,6 @@
 package com.splunk.hecclient;
 
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 
@@ -25,9 +24,81 @@ import java.math.RoundingMode;
  * limitations under the License.
  */
 public class DoubleSerializer extends JsonSerializer<Double> {
+    static final long NO_TIME = Long.MIN_VALUE; // never a valid number of microseconds
+
+    private static final double MICROS_PER_SECOND = 1_000_000.0;
+    private static final int SCALE = 6;
+    // below 2^32 seconds the spacing of doubles is under half a microsecond, so at most one number of microseconds
+    // converts to a given double, and it is the one the decimal representation of the double rounds to
+    private static final double EXACT_LIMIT = 4294967296.0;
+    private static final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[24]);
+
     @Override
     public void serialize(Double value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
-        String d = BigDecimal.valueOf(value).setScale(6, RoundingMode.HALF_UP).toPlainString();
-        jgen.writeNumber(d);
+        write(jgen, value);
+    }
+
+    // writes value with 6 decimals, from its microseconds when they fit in a long
+    static void write(final JsonGenerator jgen, final double value) throws IOException {
+        long micros = toMicros(value);
+        if (micros != NO_TIME) {
+            writeMicros(jgen, micros);
+        } else {
+            String d = BigDecimal.valueOf(value).setScale(SCALE, RoundingMode.HALF_UP).toPlainString();
+            jgen.writeNumber(d);
+        }
+    }
+
+    /**
+     * Converts epoch seconds to microseconds, rounded half up on the decimal representation of the double the way
+     * BigDecimal.valueOf(value).setScale(6, RoundingMode.HALF_UP) does, so that writing the microseconds gives the
+     * very digits of the BigDecimal.
+     *
+     * @return  The microseconds, or NO_TIME when value is not a finite number of microseconds which fits in a long.
+     * @since   2.2.3
+     */
+    static long toMicros(final double value) {
+        if (Math.abs(value) < EXACT_LIMIT) {
+            long micros = Math.round(value * MICROS_PER_SECOND);
+            if (micros / MICROS_PER_SECOND == value) {
+                return micros;
+            }
+        }
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return NO_TIME;
+        }
+        try {
+            return BigDecimal.valueOf(value).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException ex) {
+            return NO_TIME;
+        }
+    }
+
+    /**
+     * Writes microseconds as seconds with 6 decimals, which is the plain string of a BigDecimal of scale 6, without
+     * creating a BigDecimal or a String.
+     *
+     * @since   2.2.3
+     */
+    static void writeMicros(final JsonGenerator jgen, final long micros) throws IOException {
+        char[] buf = buffers.get();
+        int pos = buf.length;
+        long abs = Math.abs(micros);
+        long fraction = abs % 1_000_000;
+        long seconds = abs / 1_000_000;
+        for (int i = 0; i < SCALE; i++) {
+            buf[--pos] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        buf[--pos] = '.';
+        do {
+            buf[--pos] = (char) ('0' + seconds % 10);
+            seconds /= 10;
+        } while (seconds != 0);
+        if (micros < 0) {
+            buf[--pos] = '-';
+        }
+        jgen.writeNumber(buf, pos, buf.length - pos);
     }
 }
@@ -17,13 +17,21 @@ package com.splunk.hecclient;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import org.slf4j.*;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -39,6 +47,7 @@ import java.util.TimeZone;
  * @since       1.0.0
  */
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonPropertyOrder({Event.TIME}) // time is serialized through its getter, keep it first as when it was a field
 public abstract class Event {
     static final String TIME = "time";
     static final String HOST = "host";
@@ -46,19 +55,34 @@ public abstract class Event {
     static final String SOURCE = "source";
     static final String SOURCETYPE = "sourcetype";
 
+    static final byte[] NEW_LINE = {'\n'};
+    static final byte[] NO_LINE_BREAKER = {};
+    // below 2^32 seconds, the doubles of epoch milliseconds / 1000.0 serialize to the milliseconds followed by zeros
+    private static final long MILLIS_EXACT_LIMIT = 4294967296000L;
+
+    // the line breaker comes from the task config, so the last one encoded is almost always the one asked for
+    private static volatile EncodedLineBreaker lastLineBreaker;
+
     static final ObjectMapper jsonMapper;
+    // used when streaming a batch, the generator is flushed once per batch instead of once per event
+    static final ObjectWriter streamWriter;
     static {
         jsonMapper = new ObjectMapper();
         jsonMapper.registerModule(new com.splunk.kafka.connect.JacksonStructModule());
         SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
         df.setTimeZone(TimeZone.getTimeZone("UTC"));
         jsonMapper.setDateFormat(df);
+        streamWriter = jsonMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     protected static final Logger log = LoggerFactory.getLogger(Event.class);
 
-    @JsonSerialize(using = DoubleSerializer.class)
-    protected Double time = null; // epoch seconds.milliseconds
+    @JsonIgnore
+    protected double epochSeconds; // epoch seconds.milliseconds, set when hasTime
+    @JsonIgnore
+    protected boolean hasTime;
+    @JsonIgnore
+    protected long epochMicros = DoubleSerializer.NO_TIME; // epochSeconds as microseconds, when they fit in a long
 
     protected String source;
     protected String sourcetype;
@@ -69,6 +93,9 @@ public abstract class Event {
     @JsonIgnore
     protected String lineBreaker = "\n";
 
+    @JsonIgnore
+    protected byte[] lineBreakerBytes = NEW_LINE; // UTF-8 encoded lineBreaker, shared between events, never modify
+
     @JsonIgnore
     protected byte[] bytes; // populated once, use forever until invalidate
 
@@ -143,11 +170,36 @@ public abstract class Event {
      * @since       1.0.0
      */
     public final Event setTime(final double etime /* seconds.milliseconds */) {
-        this.time = etime;
+        putTime(etime, DoubleSerializer.toMicros(etime));
         invalidate();
         return this;
     }
 
+    /**
+     * Sets the time from epoch milliseconds, the unit of Kafka record timestamps, without going through a double.
+     * The event is serialized the same as after setTime(epochMillis / 1000.0).
+     *
+     * @param epochMillis  Event time in epoch milliseconds
+     * @return             Current representation of Event.
+     * @see                #setTime(double)
+     * @since              2.2.3
+     */
+    public final Event setTimeMillis(final long epochMillis) {
+        if (epochMillis > -MILLIS_EXACT_LIMIT && epochMillis < MILLIS_EXACT_LIMIT) {
+            // the decimal representation of epochMillis / 1000.0 is epochMillis with a dot, as it has few digits
+            putTime(epochMillis / 1000.0, epochMillis * 1000L);
+            invalidate();
+            return this;
+        }
+        return setTime(epochMillis / 1000.0);
+    }
+
+    final void putTime(final double etime, final long micros) {
+        epochSeconds = etime;
+        epochMicros = micros;
+        hasTime = true;
+    }
+
     /**
      * Source is the default field used within an indexed Splunk event. The source of an event is the name of the file, stream
      * or other input from which the event originates
@@ -208,8 +260,9 @@ public abstract class Event {
         return this;
     }
 
+    @JsonSerialize(using = DoubleSerializer.class)
     public final Double getTime() {
-        return time;
+        return hasTime ? epochSeconds : null;
     }
 
     public final String getSource() {
@@ -255,6 +308,7 @@ public abstract class Event {
     /**
      * Will calculate and return the amount of bytes as an integer of the data and linebreak combined. Used in batch
      * classes to calculate the total length of a batch to fulfil interface requirements of org.apache.http.HttpEntity
+     * The channel field of the batch, which is written along with the event, is not counted.
      *
      * @return  the total number of bytes of the eventEvent
      * @see     org.apache.http.HttpEntity
@@ -262,7 +316,7 @@ public abstract class Event {
      */
     public final int length() {
         byte[] data = getBytes();
-        return data.length + lineBreaker.getBytes().length;
+        return data.length + lineBreakerBytes.length;
     }
 
     /**
@@ -278,10 +332,20 @@ public abstract class Event {
     @JsonIgnore
     public final InputStream getInputStream() {
         byte[] data = getBytes();
-        InputStream eventStream = new ByteArrayInputStream(data);
+        SerializableString channelField = boundChannelField();
+        InputStream eventStream;
+        if (channelField == null) {
+            eventStream = new ByteArrayInputStream(data);
+        } else {
+            int at = channelFieldOffset(data.length);
+            eventStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(data, 0, at),
+                    new ByteArrayInputStream(channelField.asUnquotedUTF8()),
+                    new ByteArrayInputStream(data, at, data.length - at))));
+        }
 
         // avoid copying the event
-        InputStream carriageReturnStream = new ByteArrayInputStream(lineBreaker.getBytes());
+        InputStream carriageReturnStream = new ByteArrayInputStream(lineBreakerBytes);
         return new SequenceInputStream(eventStream, carriageReturnStream);
     }
 
@@ -297,11 +361,67 @@ public abstract class Event {
      */
     public final void writeTo(OutputStream out) throws IOException {
         byte[] data = getBytes();
-        out.write(data);
+        SerializableString channelField = boundChannelField();
+        if (channelField == null) {
+            out.write(data);
+        } else {
+            int at = channelFieldOffset(data.length);
+            out.write(data, 0, at);
+            out.write(channelField.asUnquotedUTF8());
+            out.write(data, at, data.length - at);
+        }
 
         // append line breaker
-        byte[] breaker = lineBreaker.getBytes();
-        out.write(breaker);
+        out.write(lineBreakerBytes);
+    }
+
+    /**
+     * Serializes the Event followed by the linebreak straight into a JsonGenerator which is shared by all the events
+     * of a batch. Bytes already calculated for the Event are reused, otherwise nothing is cached so that no per-event
+     * byte array is materialized.
+     *
+     * @param gen JsonGenerator to write the Event(JSONEvent, RawEvent) to.
+     *
+     * @throws  IOException
+     * @see     com.fasterxml.jackson.core.JsonGenerator
+     * @since   2.2.3
+     */
+    public final void writeTo(JsonGenerator gen) throws IOException {
+        if (bytes != null) {
+            SerializableString channelField = boundChannelField();
+            if (channelField == null) {
+                writeRaw(gen, bytes);
+            } else {
+                int at = channelFieldOffset(bytes.length);
+                writeRaw(gen, bytes, 0, at);
+                gen.writeRaw(channelField);
+                writeRaw(gen, bytes, at, bytes.length - at);
+            }
+        } else {
+            serialize(gen);
+        }
+        gen.writeRaw(lineBreaker);
+    }
+
+    /**
+     * Validates the Event the same way validate() does, but serializes it into a discarding stream instead of caching
+     * the byte representation. Used when event batches are streamed.
+     *
+     * @throws  HecException
+     * @see     #validate()
+     * @since   2.2.3
+     */
+    public void validateWithoutCaching() throws HecException {
+        if (bytes != null) {
+            return;
+        }
+
+        try (JsonGenerator gen = jsonMapper.getFactory().createGenerator(NullOutputStream.INSTANCE)) {
+            serialize(gen);
+        } catch (IOException ex) {
+            log.error("Invalid event", ex);
+            throw new HecException("Failed to json marshal the event", ex);
+        }
     }
 
     /**
@@ -339,6 +459,66 @@ public abstract class Event {
      */
     public abstract byte[] getBytes() throws HecException;
 
+    /**
+     * Writes the JsonEvent or RawEvent representation into the JsonGenerator without the linebreak.
+     *
+     * @throws  IOException
+     * @see     JsonEvent
+     * @see     RawEvent
+     * @since   2.2.3
+     */
+    protected abstract void serialize(JsonGenerator gen) throws IOException;
+
+    // encoding of the channel field of the batch of the event, written into the event at channelFieldOffset(), null
+    // when there is none
+    SerializableString boundChannelField() {
+        return null;
+    }
+
+    // where the channel field goes in the length bytes of the event
+    int channelFieldOffset(final int length) {
+        return length;
+    }
+
+    /**
+     * Writes already encoded bytes through the generator, flushing what the generator has buffered first to keep
+     * the output ordered.
+     *
+     * @since   2.2.3
+     */
+    protected static void writeRaw(JsonGenerator gen, byte[] data) throws IOException {
+        writeRaw(gen, data, 0, data.length);
+    }
+
+    protected static void writeRaw(JsonGenerator gen, byte[] data, int offset, int len) throws IOException {
+        gen.flush();
+        ((OutputStream) gen.getOutputTarget()).write(data, offset, len);
+    }
+
+    /**
+     * Encodes a line breaker as UTF-8. The common line breakers and the last one encoded are shared instead of being
+     * encoded again for every event.
+     *
+     * @since   2.2.3
+     */
+    static byte[] encodeLineBreaker(final String breaker) {
+        if (breaker.isEmpty()) {
+            return NO_LINE_BREAKER;
+        }
+        if (breaker.equals("\n")) {
+            return NEW_LINE;
+        }
+
+        EncodedLineBreaker last = lastLineBreaker;
+        if (last != null && last.value.equals(breaker)) {
+            return last.bytes;
+        }
+
+        byte[] bytes = breaker.getBytes(StandardCharsets.UTF_8);
+        lastLineBreaker = new EncodedLineBreaker(breaker, bytes);
+        return bytes;
+    }
+
     /**
      * Static helper function looking for null or empty events. On finding one of these failure conditions a
      * HECException is thrown.
@@ -356,4 +536,26 @@ public abstract class Event {
             }
         }
     }
+
+    private static final class EncodedLineBreaker {
+        final String value;
+        final byte[] bytes;
+
+        EncodedLineBreaker(String value, byte[] bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
 }
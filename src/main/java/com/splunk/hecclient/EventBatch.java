@@ -15,16 +15,16 @@
  */
 package com.splunk.hecclient;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
 import org.apache.http.HttpEntity;
 import org.apache.http.entity.AbstractHttpEntity;
-import org.apache.http.entity.ContentProducer;
-import org.apache.http.entity.EntityTemplate;
+import org.apache.http.entity.ByteArrayEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPOutputStream;
 
 public abstract class EventBatch {
     private static Logger log = LoggerFactory.getLogger(EventBatch.class);
@@ -35,12 +35,24 @@ public abstract class EventBatch {
     private static final int COMMITTED = 1;
     private static final int FAILED = 2;
 
+    private static final byte[] NO_BYTES = {};
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024; // 64KB, events are gathered before they are compressed
+
     private volatile int status = INIT;
     private int failureCount = 0;
     private boolean enableCompression;
+    private boolean enableStreaming;
+    private CompressionCodec compressionCodec = CompressionCodecs.gzip;
+    private int compressionLevel = CompressionCodecs.DEFAULT_LEVEL;
+    private byte[] compressedData;
     private long sendTimestamp = System.currentTimeMillis() / 1000; // in seconds
+    private volatile long postNanos = System.nanoTime(); // when the batch was last posted, see markPosted()
     protected int len;
     protected List<Event> events = new ArrayList<>();
+    // the channel field is written into the json events when the batch is written, see ChannelField
+    private final ChannelBinding channel = new ChannelBinding();
+    // number of json events for each kind of place of the channel field
+    private final int[] channelFieldKinds = new int[ChannelField.HELD + 1];
 
     public abstract String getRestEndpoint();
     public abstract String getContentType();
@@ -50,11 +62,50 @@ public abstract class EventBatch {
     public final void addExtraFields(final Map<String, String> fields) {
         // recalculate the batch length since we inject more meta data to each event
         int newLength = 0;
+        Arrays.fill(channelFieldKinds, 0);
         for (final Event event: events) {
             event.addFields(fields);
-            newLength += event.length();
+            if (!enableStreaming) {
+                newLength += event.length();
+            }
+            if (event instanceof JsonEvent) {
+                channelFieldKinds[((JsonEvent) event).channelFieldKind()]++;
+            }
         }
         len = newLength;
+        compressedData = null;
+    }
+
+    // json events share the channel binding of their batch, so that the channel field can change without them
+    final void bindChannel(final JsonEvent event) {
+        event.setChannelBinding(channel);
+        channelFieldKinds[event.channelFieldKind()]++;
+    }
+
+    /**
+     * Sets the channel field written into the json events when the batch is written. The events are not serialized
+     * again, unless they hold a field of that name already, so a batch moves from a channel to another one at no cost.
+     */
+    final synchronized void setChannelField(final ChannelField field) {
+        if (field == channel.field) {
+            return;
+        }
+
+        if (field != null && channelFieldKinds[ChannelField.HELD] != 0) {
+            for (final Event event: events) {
+                if (event instanceof JsonEvent && ((JsonEvent) event).channelFieldKind() == ChannelField.HELD) {
+                    if (!enableStreaming) {
+                        len -= event.length();
+                    }
+                    event.addFields(field.asMap());
+                    if (!enableStreaming) {
+                        len += event.length();
+                    }
+                }
+            }
+        }
+        channel.field = field;
+        compressedData = null;
     }
 
     public final boolean isTimedout(long ttl) {
@@ -71,6 +122,15 @@ public abstract class EventBatch {
         sendTimestamp = System.currentTimeMillis() / 1000;
     }
 
+    // marks when the batch was accepted by HEC, for measuring how long its ack takes
+    final void markPosted() {
+        postNanos = System.nanoTime();
+    }
+
+    final long getPostNanos() {
+        return postNanos;
+    }
+
     public final boolean isFailed() {
         return status == FAILED;
     }
@@ -92,6 +152,7 @@ public abstract class EventBatch {
 
     public final EventBatch commit() {
         status = COMMITTED;
+        compressedData = null;
         return this;
     }
 
@@ -107,7 +168,13 @@ public abstract class EventBatch {
 
     // Total length of data for all events
     public final int length() {
-        return len;
+        ChannelField field = channel.field;
+        if (field == null) {
+            return len;
+        }
+        return len + channelFieldKinds[ChannelField.NO_FIELDS] * field.encodedLength(ChannelField.NO_FIELDS)
+                + channelFieldKinds[ChannelField.EMPTY_FIELDS] * field.encodedLength(ChannelField.EMPTY_FIELDS)
+                + channelFieldKinds[ChannelField.FIELDS] * field.encodedLength(ChannelField.FIELDS);
     }
 
     // Total number of events
@@ -120,14 +187,15 @@ public abstract class EventBatch {
     }
 
     public final HttpEntity getHttpEntity() {
-        AbstractHttpEntity e = new HttpEventBatchEntity();
+        AbstractHttpEntity e = enableStreaming ? new StreamingEventBatchEntity() : new HttpEventBatchEntity();
         e.setContentType(getContentType());
         return e;
     }
 
+    // the gzip payload is computed once and reused for every resend until the batch is committed
     public final HttpEntity getHttpEntityTemplate() {
-        AbstractHttpEntity e = new EntityTemplate(new GzipDataContentProducer());
-        e.setContentEncoding("gzip");
+        AbstractHttpEntity e = new ByteArrayEntity(getCompressedData());
+        e.setContentEncoding(getContentEncoding());
         e.setContentType(getContentType());
         return e;
     }
@@ -152,6 +220,28 @@ public abstract class EventBatch {
         this.enableCompression = enableCompression;
     }
 
+    public boolean isEnableStreaming() {
+        return enableStreaming;
+    }
+
+    // when streaming is enabled, events are serialized straight into the http body and length() is not tracked
+    public void setEnableStreaming(boolean enableStreaming) {
+        this.enableStreaming = enableStreaming;
+    }
+
+    // the codec comes from the indexer which sends this batch
+    final synchronized void setCompression(CompressionCodec codec, int level) {
+        if (codec != compressionCodec || level != compressionLevel) {
+            compressionCodec = codec;
+            compressionLevel = level;
+            compressedData = null;
+        }
+    }
+
+    public final String getContentEncoding() {
+        return compressionCodec.getContentEncoding();
+    }
+
     public final byte[] getDataOfBatch() throws IOException {
         try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
             for (final Event e : events) {
@@ -162,14 +252,45 @@ public abstract class EventBatch {
         }
     }
 
-    private class GzipDataContentProducer implements ContentProducer {
+    final synchronized byte[] getCompressedData() {
+        if (compressedData == null) {
+            try {
+                compressedData = compress();
+            } catch (IOException ex) {
+                log.error("failed to compress event batch", ex);
+                throw new HecException("failed to compress event batch", ex);
+            }
+        }
+        return compressedData;
+    }
 
-        @Override
-        public void writeTo(OutputStream outputStream) throws IOException {
-            OutputStream out = new GZIPOutputStream(outputStream);
-            out.write(getDataOfBatch());
-            out.flush();
-            out.close();
+    private byte[] compress() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(length() / 4, 512));
+        try (OutputStream out = compressionCodec.compress(bos, compressionLevel)) {
+            if (enableStreaming) {
+                streamEvents(out);
+            } else {
+                // the events go straight to the codec, through a buffer which gathers their small writes. The buffer
+                // is flushed into the codec stream, which is left open for its trailer
+                int bufferSize = Math.max(Math.min(length(), COMPRESSION_BUFFER_SIZE), 1);
+                BufferedOutputStream buffered = new BufferedOutputStream(out, bufferSize);
+                for (final Event e : events) {
+                    e.writeTo(buffered);
+                }
+                buffered.flush();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private void streamEvents(OutputStream out) throws IOException {
+        // one generator, and its recycled buffers, is shared by all the events of the batch
+        try (JsonGenerator gen = Event.jsonMapper.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setRootValueSeparator(null);
+            for (final Event e : events) {
+                e.writeTo(gen);
+            }
         }
     }
 
@@ -191,26 +312,138 @@ public abstract class EventBatch {
 
         @Override
         public InputStream getContent() throws IOException, UnsupportedOperationException {
-            return new SequenceInputStream(new Enumeration<InputStream>() {
-                int idx = -1;
+            return new EventBatchInputStream();
+        }
 
-                @Override
-                public boolean hasMoreElements() {
-                    return !events.isEmpty() && (idx + 1) < events.size();
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            for (final Event e : events) {
+                e.writeTo(outstream);
+            }
+        }
+    }
+
+    // reads the bytes of the events and their line breakers in place, without wrapping each of them in a stream
+    private class EventBatchInputStream extends InputStream {
+        // the segments of an event: its bytes up to the channel field, the channel field, the rest of its bytes and
+        // the line breaker
+        private static final int SEGMENTS = 4;
+
+        private int idx = -1;
+        private int segment = SEGMENTS - 1;
+        private byte[] data; // bytes of the current event
+        private byte[] channelField; // channel field of the current event
+        private int at; // where the channel field goes in data
+        private byte[] current; // the current segment is current[pos, end)
+        private int pos;
+        private int end;
+
+        EventBatchInputStream() {
+            next();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            int total = 0;
+            while (total < len && current != null) {
+                int n = Math.min(len - total, end - pos);
+                System.arraycopy(current, pos, b, off + total, n);
+                pos += n;
+                total += n;
+                if (pos == end) {
+                    next();
                 }
+            }
+            return total == 0 ? -1 : total;
+        }
 
-                @Override
-                public InputStream nextElement() {
-                    return events.get(++idx).getInputStream();
+        // moves to the next segment which is not empty
+        private void next() {
+            do {
+                if (++segment == SEGMENTS) {
+                    if (++idx == events.size()) {
+                        current = null;
+                        return;
+                    }
+
+                    Event event = events.get(idx);
+                    data = event.getBytes();
+                    SerializableString field = event.boundChannelField();
+                    channelField = field == null ? NO_BYTES : field.asUnquotedUTF8();
+                    at = field == null ? data.length : event.channelFieldOffset(data.length);
+                    segment = 0;
                 }
-            });
+
+                switch (segment) {
+                    case 0:
+                        current = data;
+                        pos = 0;
+                        end = at;
+                        break;
+                    case 1:
+                        current = channelField;
+                        pos = 0;
+                        end = channelField.length;
+                        break;
+                    case 2:
+                        current = data;
+                        pos = at;
+                        end = data.length;
+                        break;
+                    default:
+                        current = events.get(idx).lineBreakerBytes;
+                        pos = 0;
+                        end = current.length;
+                }
+            } while (pos == end);
+        }
+    }
+
+    static final class ChannelBinding {
+        volatile ChannelField field;
+    }
+
+    private class StreamingEventBatchEntity extends AbstractHttpEntity {
+        StreamingEventBatchEntity() {
+            setChunked(true);
         }
 
         @Override
-        public void writeTo(OutputStream outstream) throws IOException {
-            for (final Event e : events) {
-                e.writeTo(outstream);
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException, UnsupportedOperationException {
+            try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+                streamEvents(bos);
+                return new ByteArrayInputStream(bos.toByteArray());
             }
         }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            streamEvents(outstream);
+        }
     }
 }
@@ -19,6 +19,13 @@ import org.apache.http.impl.client.CloseableHttpClient;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import java.security.cert.CertificateException;
 import java.security.KeyStore;
@@ -57,10 +64,14 @@ import org.apache.kafka.connect.errors.ConnectException;
  * @see         HecAckPoller
  */
 public class Hec implements HecInf {
+    private static final long ASYNC_SENDER_SHUTDOWN_TIMEOUT = 60; // in seconds
+
     private LoadBalancerInf loadBalancer;
     private Poller poller;
     private CloseableHttpClient httpClient;
     private boolean ownHttpClient = false; //flag for when the HTTPClient is created as part of this Hec object being created
+    private ExecutorService asyncSender; // only created when async send is enabled
+    private final List<Indexer> indexers = new ArrayList<>();
 
    /**
     * Factory method to creates a new HEC Client with Acknowledgment.
@@ -195,12 +206,30 @@ public class Hec implements HecInf {
     * @see                 LoadBalancerInf
     */
     public Hec(HecConfig config, CloseableHttpClient httpClient, Poller poller, LoadBalancerInf loadBalancer) {
+        int maxInFlight = config.getMaxHttpConnectionPerChannel();
+        if (config.getEnableAsyncSend()) {
+            ThreadFactory f = (Runnable r) -> {
+                Thread t = new Thread(r, "HEC-async-sender");
+                t.setDaemon(true);
+                return t;
+            };
+            // one thread per request in flight, up to the configured bound. The requests over the bound wait in the
+            // queue of the pool, they are still limited to maxInFlight per channel
+            int threads = Math.min(channelsPerUri(config) * config.getUris().size() * maxInFlight, config.getAsyncSendThreads());
+            asyncSender = Executors.newFixedThreadPool(Math.max(threads, 1), f);
+        }
+
         for (int i = 0; i < config.getTotalChannels(); ) {
             for (String uri : config.getUris()) {
                 Indexer indexer = new Indexer(uri, httpClient, poller, config);
+                indexers.add(indexer);
                 indexer.setKeepAlive(config.getHttpKeepAlive());
                 indexer.setBackPressureThreshold(config.getBackoffThresholdSeconds());
-                loadBalancer.add(uri, indexer.getChannel().setTracking(config.getEnableChannelTracking()));
+                HecChannel channel = indexer.getChannel();
+                if (asyncSender != null) {
+                    channel = new AsyncIndexer(indexer, poller, asyncSender, maxInFlight).getChannel();
+                }
+                loadBalancer.add(uri, channel.setTracking(config.getEnableChannelTracking()));
                 i++;
             }
         }
@@ -211,6 +240,11 @@ public class Hec implements HecInf {
         this.httpClient = httpClient;
     }
 
+    // number of threads posting the batches, 0 when async send is disabled
+    int getAsyncSenderThreads() {
+        return asyncSender instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) asyncSender).getMaximumPoolSize() : 0;
+    }
+
    /**
     * Setter method for when an HttpClient is created as part of this objects creation. Hec has a factory method for
     *
@@ -240,6 +274,15 @@ public class Hec implements HecInf {
     */
     @Override
     public final void close() {
+        if (asyncSender != null) {
+            // let the in-flight requests report back to the poller before it is stopped
+            asyncSender.shutdown();
+            try {
+                asyncSender.awaitTermination(ASYNC_SENDER_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
         poller.stop();
         if (ownHttpClient) {
             try {
@@ -249,6 +292,9 @@ public class Hec implements HecInf {
             }
         }
         loadBalancer.close();
+        for (Indexer indexer : indexers) {
+            indexer.close();
+        }
     }
 
    /**
@@ -266,6 +312,10 @@ public class Hec implements HecInf {
     */
     public static CloseableHttpClient createHttpClient(final HecConfig config) {
         int poolSizePerDest = config.getMaxHttpConnectionPerChannel();
+        if (config.getEnableAsyncSend()) {
+            // every channel of a destination keeps up to max.http.connection.per.channel requests in flight
+            poolSizePerDest *= Math.max(channelsPerUri(config), 1);
+        }
 
         if (config.kerberosAuthEnabled()) {
             try {
@@ -303,6 +353,12 @@ public class Hec implements HecInf {
          }
     }
 
+    // channels are spread evenly across the uris, the last round may go beyond the total
+    private static int channelsPerUri(final HecConfig config) {
+        int uris = config.getUris().size();
+        return uris == 0 ? 0 : (config.getTotalChannels() + uris - 1) / uris;
+    }
+
    /**
     * loadCustomSSLContext will take a path to a java key store and a password decode and load the key-store.
     * Passing on the keystore to the loadTrustManagerFactory to retrieve an SSL Context to be used in the creation of
@@ -151,6 +151,7 @@ public final class HecAckPoller implements Poller {
             return;
         }
 
+        batch.markPosted();
         channelEvents.put(resp.getAckId(), batch);
 
         // increase total number of event batches
@@ -259,13 +260,15 @@ public final class HecAckPoller implements Poller {
         List<EventBatch> timeouts = new ArrayList<>();
         for (Map.Entry<HecChannel, ConcurrentHashMap<Long, EventBatch>> entry: outstandingEventBatches.entrySet()) {
             Map<Long, EventBatch> batches = entry.getValue();
-            findAndRemoveTimedoutBatches(batches, timeouts);
+            long oldestPost = findAndRemoveTimedoutBatches(batches, timeouts);
 
             Set<Long> ids = batches.keySet();
             if (ids.isEmpty()) {
                 continue;
             }
             HecChannel channel = entry.getKey();
+            // acks which do not come count as well, an indexer which stops acking must not look fast
+            channel.getStats().recordPendingAck(System.nanoTime() - oldestPost);
             log.info("polling {} acks for channel={} on indexer={}", ids.size(), channel, channel.getIndexer());
             HttpUriRequest ackReq = createAckPollHttpRequest(entry.getKey(), ids);
             if (ackReq != null) {
@@ -303,7 +306,9 @@ public final class HecAckPoller implements Poller {
         }
     }
 
-    private void findAndRemoveTimedoutBatches(Map<Long, EventBatch> batches, List<EventBatch> timeouts) {
+    // returns when the oldest of the batches left was posted
+    private long findAndRemoveTimedoutBatches(Map<Long, EventBatch> batches, List<EventBatch> timeouts) {
+        long oldestPost = System.nanoTime();
         Iterator<Map.Entry<Long, EventBatch>> iterator = batches.entrySet().iterator();
         while (iterator.hasNext()) {
             EventBatch batch = iterator.next().getValue();
@@ -311,8 +316,11 @@ public final class HecAckPoller implements Poller {
                 batch.fail();
                 timeouts.add(batch);
                 iterator.remove();
+            } else if (batch.getPostNanos() - oldestPost < 0) {
+                oldestPost = batch.getPostNanos();
             }
         }
+        return oldestPost;
     }
 
     private void handleAckPollResponse(String resp, HecChannel channel) {
@@ -348,6 +356,7 @@ public final class HecAckPoller implements Poller {
                     continue;
                 }
                 totalOutstandingEventBatches.decrementAndGet();
+                channel.getStats().recordAckLatency(System.nanoTime() - batch.getPostNanos());
                 batch.commit();
                 committedBatches.add(batch);
             }
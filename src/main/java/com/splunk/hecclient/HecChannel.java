@@ -17,14 +17,13 @@ package com.splunk.hecclient;
 
 import org.apache.http.client.methods.HttpUriRequest;
 
-import java.util.HashMap;
-import java.util.Map;
 
 final class HecChannel {
     private String id;
-    private Map<String, String> chField;
+    private ChannelField chField;
     private IndexerInf indexer;
     private boolean isAvailable;
+    private final ChannelStats stats = new ChannelStats();
 
     public HecChannel(IndexerInf idx) {
         id = newChannelId();
@@ -36,6 +35,15 @@ final class HecChannel {
         return indexer;
     }
 
+    // used when the indexer is wrapped, for instance by AsyncIndexer
+    void setIndexer(IndexerInf idx) {
+        indexer = idx;
+    }
+
+    ChannelStats getStats() {
+        return stats;
+    }
+
     public String getId() {
         return id;
     }
@@ -50,13 +58,19 @@ final class HecChannel {
         return this;
     }
 
-    public void setId() { id = newChannelId(); }
+    public void setId() {
+        id = newChannelId();
+        if (chField != null) {
+            chField = new ChannelField(id);
+        }
+    }
 
     public void setAvailable(boolean isAvailable) { this.isAvailable = isAvailable; }
 
     public void send(final EventBatch batch) {
         if (chField != null) {
-            batch.addExtraFields(chField);
+            // written into the events when the batch is, a resend on another channel does not serialize them again
+            batch.setChannelField(chField);
         }
         indexer.send(batch);
     }
@@ -95,8 +109,7 @@ final class HecChannel {
 
     private HecChannel enableTracking() {
         if (chField == null) {
-            chField = new HashMap<>();
-            chField.put("hec-channel", id);
+            chField = new ChannelField(id);
         }
         return this;
     }
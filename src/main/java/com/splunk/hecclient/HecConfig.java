@@ -37,10 +37,20 @@ public final class HecConfig {
     private String trustStoreType = "JKS";
     private String trustStorePassword;
     private int lbPollInterval = 120; // in seconds
+    private int healthCheckTimeout = 5; // in seconds
+    private String lbPolicy = ChannelSelectors.ROUND_ROBIN;
     private String kerberosPrincipal;
     private String kerberosKeytabPath;
     private int concurrentHecQueueCapacity = 100;
     private Boolean autoExtractTimestamp;
+    private String compressionCodec = CompressionCodecs.GZIP;
+    private int compressionLevel = CompressionCodecs.DEFAULT_LEVEL;
+    private boolean enableAsyncSend = false;
+    private int asyncSendThreads = 32;
+    private boolean enableRateControl = false;
+    private int circuitBreakerFailures = 0;
+    private int circuitBreakerErrorRate = 0; // in percent
+    private int circuitBreakerOpenSeconds = 30;
 
     public HecConfig(List<String> uris, String token) {
         this.uris = uris;
@@ -87,6 +97,14 @@ public final class HecConfig {
         return lbPollInterval;
     }
 
+    public int getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    public String getLbPolicy() {
+        return lbPolicy;
+    }
+
     public int getAckPollThreads() {
         return ackPollThreads;
     }
@@ -117,6 +135,22 @@ public final class HecConfig {
 
     public Boolean getAutoExtractTimestamp() { return autoExtractTimestamp; }
 
+    public String getCompressionCodec() { return compressionCodec; }
+
+    public int getCompressionLevel() { return compressionLevel; }
+
+    public boolean getEnableAsyncSend() { return enableAsyncSend; }
+
+    public int getAsyncSendThreads() { return asyncSendThreads; }
+
+    public boolean getEnableRateControl() { return enableRateControl; }
+
+    public int getCircuitBreakerFailures() { return circuitBreakerFailures; }
+
+    public int getCircuitBreakerErrorRate() { return circuitBreakerErrorRate; }
+
+    public int getCircuitBreakerOpenSeconds() { return circuitBreakerOpenSeconds; }
+
     public HecConfig setDisableSSLCertVerification(boolean disableVerfication) {
         disableSSLCertVerification = disableVerfication;
         return this;
@@ -157,6 +191,16 @@ public final class HecConfig {
         return this;
     }
 
+    public HecConfig setHealthCheckTimeout(int timeout /*seconds*/) {
+        healthCheckTimeout = timeout;
+        return this;
+    }
+
+    public HecConfig setLbPolicy(String policy) {
+        lbPolicy = policy;
+        return this;
+    }
+
     public HecConfig setAckPollThreads(int num) {
         ackPollThreads = num;
         return this;
@@ -225,6 +269,46 @@ public final class HecConfig {
         return this;
     }
 
+    public HecConfig setCompressionCodec(String compressionCodec) {
+        this.compressionCodec = compressionCodec;
+        return this;
+    }
+
+    public HecConfig setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public HecConfig setEnableAsyncSend(boolean enableAsyncSend) {
+        this.enableAsyncSend = enableAsyncSend;
+        return this;
+    }
+
+    public HecConfig setAsyncSendThreads(int threads) {
+        this.asyncSendThreads = threads;
+        return this;
+    }
+
+    public HecConfig setEnableRateControl(boolean enableRateControl) {
+        this.enableRateControl = enableRateControl;
+        return this;
+    }
+
+    public HecConfig setCircuitBreakerFailures(int failures) {
+        circuitBreakerFailures = failures;
+        return this;
+    }
+
+    public HecConfig setCircuitBreakerErrorRate(int percent) {
+        circuitBreakerErrorRate = percent;
+        return this;
+    }
+
+    public HecConfig setCircuitBreakerOpenSeconds(int seconds) {
+        circuitBreakerOpenSeconds = seconds;
+        return this;
+    }
+
     public boolean kerberosAuthEnabled() {
         return !kerberosPrincipal().isEmpty();
     }
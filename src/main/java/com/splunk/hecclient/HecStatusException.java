@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+/**
+ * HecStatusException is thrown when HEC answers a POST with an error status, as opposed to the POST not getting an
+ * answer. Client errors, such as an invalid token or index, say nothing about the health of the indexer.
+ *
+ * @since       2.2.3
+ */
+public class HecStatusException extends HecException {
+    private static final long serialVersionUID = 34L;
+
+    private final int status;
+
+    public HecStatusException(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+
+    public HecStatusException(String message, int status, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    // true when the indexer answered, but the request was wrong
+    public boolean isClientError() {
+        return status >= 400 && status < 500;
+    }
+}
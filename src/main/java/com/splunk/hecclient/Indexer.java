@@ -19,21 +19,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.splunk.kafka.connect.VersionUtils;
-import com.sun.security.auth.module.Krb5LoginModule;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.Principal;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.security.auth.Subject;
-import javax.security.auth.kerberos.KerberosPrincipal;
-import javax.security.auth.login.AppConfigurationEntry;
-import javax.security.auth.login.Configuration;
-import javax.security.auth.login.LoginContext;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -57,17 +49,18 @@ final class Indexer implements IndexerInf {
     private HecConfig hecConfig;
 
     private HecURIBuilder hecURIBuilder;
-    private Configuration config;
+    private KerberosLogin kerberosLogin; // guarded by this
+    private boolean closed; // guarded by this
     private CloseableHttpClient httpClient;
-    private HttpContext context;
     private String baseUrl;
     private String hecToken;
     private boolean keepAlive;
     private HecChannel channel;
     private Header[] headers;
     private Poller poller;
-    private long backPressure;
-    private long lastBackPressure;
+    private CompressionCodec compressionCodec;
+    private final AtomicLong backPressure = new AtomicLong();
+    private volatile long lastBackPressure;
     private long backPressureThreshold = Long.valueOf(60) * 1000; // 1 min
 
     // Indexer doesn't own client, ack poller
@@ -77,11 +70,11 @@ final class Indexer implements IndexerInf {
         this.hecConfig = config;
         this.hecToken = config.getToken();
         this.poller = poller;
-        this.context = HttpClientContext.create();
+        this.compressionCodec = CompressionCodecs.forName(config.getCompressionCodec());
         this.hecURIBuilder = new HecURIBuilder(baseUrl, hecConfig);
-        backPressure = 0;
 
         channel = new HecChannel(this);
+        channel.getStats().setAckPollInterval(TimeUnit.SECONDS.toNanos(config.getAckPollInterval()));
 
         // Init headers
         headers = new Header[5];
@@ -138,22 +131,29 @@ final class Indexer implements IndexerInf {
     // this method is multi-thread safe
     @Override
     public boolean send(final EventBatch batch) {
-        String endpoint = batch.getRestEndpoint();
-        URI uri = hecURIBuilder.getURI(endpoint);
-        final HttpPost httpPost = new HttpPost(uri);
-        httpPost.setHeaders(headers);
-        if (batch.isEnableCompression()) {
-            httpPost.setHeader("Content-Encoding", "gzip");
-            httpPost.setEntity(batch.getHttpEntityTemplate());
-        } else {
-            httpPost.setEntity(batch.getHttpEntity());
+        final HttpPost httpPost;
+        try {
+            // compressing the batch may fail, which is no fault of the indexer
+            httpPost = createHttpPost(batch);
+        } catch (HecException ex) {
+            poller.fail(channel, batch, ex);
+            return false;
         }
+
+        final long bytes = batch.length();
+        final ChannelStats stats = channel.getStats();
+        stats.postStarted(bytes);
         String resp;
         try {
+            long start = System.nanoTime();
             resp = executeHttpRequest(httpPost);
+            stats.postSucceeded(batch, bytes, System.nanoTime() - start);
         } catch (HecException ex) {
+            stats.postFailed(batch, ex);
             poller.fail(channel, batch, ex);
             return false;
+        } finally {
+            stats.postFinished(bytes);
         }
 
         poller.stickySessionHandler(channel);
@@ -165,33 +165,43 @@ final class Indexer implements IndexerInf {
         return true;
     }
 
-    // executeHttpRequest is synchronized since there are multi-threads to access the context
+    HttpPost createHttpPost(final EventBatch batch) {
+        String endpoint = batch.getRestEndpoint();
+        URI uri = hecURIBuilder.getURI(endpoint);
+        final HttpPost httpPost = new HttpPost(uri);
+        httpPost.setHeaders(headers);
+        if (batch.isEnableCompression()) {
+            batch.setCompression(compressionCodec, hecConfig.getCompressionLevel());
+            httpPost.setHeader("Content-Encoding", batch.getContentEncoding());
+            httpPost.setEntity(batch.getHttpEntityTemplate());
+        } else {
+            httpPost.setEntity(batch.getHttpEntity());
+        }
+        return httpPost;
+    }
+
+    // this method is multi-thread safe, every request gets its own context so data posts and ack polls
+    // on the same channel don't wait for each other. Cookies still live in the client's cookie store.
     @Override
-    public synchronized String executeHttpRequest(final HttpUriRequest req) {
+    public String executeHttpRequest(final HttpUriRequest req) {
+        final HttpContext context = HttpClientContext.create();
         CloseableHttpResponse resp;
         if (hecConfig.kerberosAuthEnabled()) {
-            if (config == null) {
-                defineKerberosConfigs();
-            }
-            Set<Principal> principals = new HashSet<>(1);
-            principals.add(new KerberosPrincipal(hecConfig.kerberosPrincipal()));
-            Subject subject = new Subject(false, principals, new HashSet<>(), new HashSet<>());
+            Subject serviceSubject;
             try {
-                LoginContext lc = new LoginContext("SplunkSinkConnector", subject, null, config);
-                lc.login();
-                Subject serviceSubject = lc.getSubject();
-                resp = Subject.doAs(serviceSubject, (PrivilegedAction<CloseableHttpResponse>) () -> {
-                    try {
-                        return httpClient.execute(req, context);
-                    } catch (IOException ex) {
-                        logBackPressure();
-                        throw new HecException("Encountered exception while posting data.", ex);
-                    }
-                });
+                serviceSubject = kerberosLogin().getSubject();
             } catch (Exception le) {
                 throw new HecException(
                     "Encountered exception while authenticating via Kerberos.", le);
             }
+            resp = Subject.doAs(serviceSubject, (PrivilegedAction<CloseableHttpResponse>) () -> {
+                try {
+                    return httpClient.execute(req, context);
+                } catch (IOException ex) {
+                    logBackPressure();
+                    throw new HecException("Encountered exception while posting data.", ex);
+                }
+            });
         } else {
             try {
                 resp = httpClient.execute(req, context);
@@ -205,37 +215,25 @@ final class Indexer implements IndexerInf {
     }
 
 
-     /**
-     * Creates the Kerberos configurations.
-     *
-     * @return map of kerberos configs
-     */
-    private Map<String, Object> kerberosConfigMap() {
-        Map<String, Object> configs = new HashMap<>();
-        configs.put("useTicketCache", "true");
-        configs.put("renewTGT", "true");
-        configs.put("useKeyTab", "true");
-        configs.put("keyTab", hecConfig.kerberosKeytabLocation());
-        configs.put("refreshKrb5Config", "true");
-        configs.put("principal", hecConfig.kerberosPrincipal());
-        configs.put("storeKey", "false");
-        configs.put("doNotPrompt", "true");
-        return configs;
+    private synchronized KerberosLogin kerberosLogin() {
+        if (closed) {
+            throw new HecException("indexer " + baseUrl + " is closed");
+        }
+        if (kerberosLogin == null) {
+            kerberosLogin = KerberosLogin.forConfig(hecConfig);
+        }
+        return kerberosLogin;
     }
 
-    private void defineKerberosConfigs() {
-        config = new Configuration() {
-            @Override
-            public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
-                return new AppConfigurationEntry[]{
-                    new AppConfigurationEntry(Krb5LoginModule.class.getName(),
-                        AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, kerberosConfigMap())
-                };
-            }
-        };
+    // gives back the shared kerberos login, the http client and the poller are not owned by the indexer
+    public synchronized void close() {
+        closed = true;
+        if (kerberosLogin != null) {
+            kerberosLogin.release();
+            kerberosLogin = null;
+        }
     }
 
-
     private String readAndCloseResponse(CloseableHttpResponse resp) {
         String respPayload;
         HttpEntity entity = resp.getEntity();
@@ -274,19 +272,20 @@ final class Indexer implements IndexerInf {
                 jsonNode = jsonMapper.readTree(respPayload);
             } catch (Exception ex) {
                 log.error("failed to parse response payload", ex);
-                throw new HecException("failed to parse response payload", ex);
+                throw new HecStatusException("failed to parse response payload", status, ex);
             }
             
             String respText = (jsonNode.has("text")) ? jsonNode.get("text").asText() : null;
 
-            if (respText.equals("Invalid data format")) {
+            // a proxy in front of the indexer may answer without any text
+            if ("Invalid data format".equals(respText)) {
                 ObjectNode objNode = jsonMapper.createObjectNode();
                 objNode.put("text", "Invalid data format");
                 objNode.put("code", 0); // Mark it as success
                 objNode.put("ackId", -1);
                 respPayload = objNode.toString();
             } else {
-                throw new HecException(String.format("failed to post events resp=%s, status=%d", respPayload, status));
+                throw new HecStatusException(String.format("failed to post events resp=%s, status=%d", respPayload, status), status);
             }
         }
 
@@ -296,12 +295,13 @@ final class Indexer implements IndexerInf {
     }
 
     private void logBackPressure() {
-        backPressure += 1;
         lastBackPressure = System.currentTimeMillis();
+        backPressure.incrementAndGet();
+        channel.getStats().congested();
     }
 
     private void clearBackPressure() {
-        backPressure = 0;
+        backPressure.set(0);
         lastBackPressure = 0;
     }
 
@@ -312,7 +312,7 @@ final class Indexer implements IndexerInf {
 
     @Override
     public boolean hasBackPressure() {
-        if (backPressure > 0) {
+        if (backPressure.get() > 0) {
             if ((System.currentTimeMillis() - lastBackPressure) < backPressureThreshold) {
                 log.warn("Still in Backpressure window {}:{}", System.currentTimeMillis() - lastBackPressure, backPressureThreshold);
                 // still in the back-pressure window
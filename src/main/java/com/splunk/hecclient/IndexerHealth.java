@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndexerHealth holds the outcome of the last health check of an indexer, it is registered as an MXBean so that the
+ * probe latency of the indexers can be monitored.
+ *
+ * @since 2.2.3
+ */
+final class IndexerHealth implements IndexerHealthMXBean {
+    private static final Logger log = LoggerFactory.getLogger(IndexerHealth.class);
+
+    private volatile long probeLatencyNanos;
+    private volatile boolean healthy = true;
+    private volatile long lastProbeTime;
+    private ObjectName name;
+
+    // creates the health of indexer and registers it, failing to register only loses the metrics
+    static IndexerHealth register(final String loadBalancerId, final String indexer) {
+        IndexerHealth health = new IndexerHealth();
+        try {
+            ObjectName name = new ObjectName("com.splunk.hecclient:type=IndexerHealth,loadBalancer=" + loadBalancerId
+                    + ",indexer=" + ObjectName.quote(indexer));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(health, name);
+            health.name = name;
+        } catch (JMException ex) {
+            log.warn("failed to register the health metrics of indexer {}", indexer, ex);
+        }
+        return health;
+    }
+
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException ex) {
+            log.warn("failed to unregister {}", name, ex);
+        }
+        name = null;
+    }
+
+    void probed(final long latencyNanos) {
+        probeLatencyNanos = latencyNanos;
+        lastProbeTime = System.currentTimeMillis();
+    }
+
+    void setHealthy(final boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    long getProbeLatencyNanos() {
+        return probeLatencyNanos;
+    }
+
+    @Override
+    public long getProbeLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(probeLatencyNanos);
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    @Override
+    public long getLastProbeTime() {
+        return lastProbeTime;
+    }
+}
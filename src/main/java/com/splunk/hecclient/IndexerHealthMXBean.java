@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+/**
+ * IndexerHealthMXBean exposes the out of band health checks of an indexer over JMX, under the ObjectName
+ * com.splunk.hecclient:type=IndexerHealth,loadBalancer=&lt;id&gt;,indexer=&lt;indexer URI&gt;.
+ *
+ * @since 2.2.3
+ */
+public interface IndexerHealthMXBean {
+    /**
+     * @return  Duration in milliseconds of the last health check of the indexer, whether it passed or not, 0 before
+     *          the first check.
+     */
+    long getProbeLatencyMillis();
+
+    /**
+     * @return  False when the indexer failed its last health check, its channels are out of the load balancer then.
+     */
+    boolean isHealthy();
+
+    /**
+     * @return  Time in milliseconds since the epoch the last health check of the indexer ended at, 0 before the first
+     *          check.
+     */
+    long getLastProbeTime();
+}
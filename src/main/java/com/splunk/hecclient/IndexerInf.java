@@ -19,6 +19,9 @@ import org.apache.http.Header;
 import org.apache.http.client.methods.HttpUriRequest;
 
 interface IndexerInf {
+    // posts the batch to the indexer, its outcome is always reported to the poller: Poller.add() once the indexer
+    // accepted it, Poller.fail() otherwise. Returns false when the batch already failed, true when it was posted or,
+    // for an AsyncIndexer, handed over to the sender pool, in which case the POST may still fail later on
     boolean send(final EventBatch batch);
     String executeHttpRequest(final HttpUriRequest req);
     boolean hasBackPressure();
@@ -15,8 +15,14 @@
  */
 package com.splunk.hecclient;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,7 +39,19 @@ import java.util.Map;
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public final class JsonEvent extends Event {
+    private static final String FIELDS = "fields";
+
     private Map<String, String> fields;
+    // fields set with setFields() belong to the caller, they are copied before fields are added to them
+    private boolean fieldsShared;
+    private JsonEventTemplate template;
+    // the fields are the ones of the template, along with its tied fields
+    private boolean templateFields;
+    // channel field of the batch the event is in
+    private EventBatch.ChannelBinding channel;
+    // position of the brace closing the fields in bytes, or closing the event when it has no fields. -1 when bytes end
+    // with them, as the fields are the last property serialized
+    int fieldsEnd = -1;
 
     /**
      * Creates a new json event.
@@ -56,6 +74,47 @@ public final class JsonEvent extends Event {
     JsonEvent() {
     }
 
+    /**
+     * Creates a json event from bytes which already hold a HEC formatted event. Only the envelope is validated, extra
+     * fields are spliced into the bytes and the result is forwarded to Splunk without being serialized again.
+     *
+     * @param data         Bytes holding the HEC formatted event.
+     * @param offset       Offset of the event in data.
+     * @param length       Length of the event in data.
+     * @param extraFields  Fields added to the event, none of them may already be in the event.
+     * @param tied         Object representation of the entire Record being constructed into an Event.
+     * @return             The json event, or null when the bytes can not be forwarded as is. Callers are expected to
+     *                     fall back to deserializing the event then.
+     * @since              2.2.3
+     */
+    public static JsonEvent fromFormatted(final byte[] data, final int offset, final int length,
+                                          final Map<String, String> extraFields, final Object tied) {
+        return JsonEventEnvelope.parse(data, offset, length, extraFields, tied);
+    }
+
+    /**
+     * Sets the metadata and the fields of the event to the ones of the template. As long as they are not changed
+     * afterwards, the event is serialized by copying their json encoding from the template.
+     *
+     * @param template  Template holding the metadata and fields shared with other events.
+     * @return          Current representation of JsonEvent.
+     * @see             JsonEventTemplate
+     * @since           2.2.3
+     */
+    @JsonIgnore
+    public JsonEvent setTemplate(final JsonEventTemplate template) {
+        this.template = template;
+        index = template.index;
+        source = template.source;
+        sourcetype = template.sourcetype;
+        host = template.host;
+        fields = template.fields;
+        fieldsShared = fields != null;
+        templateFields = true;
+        invalidate();
+        return this;
+    }
+
     /**
      * ExtraFields consist of custom fields used for enriching events to be bundled in with the base Event. This can
      * used to categorize certain events, allowing flexibility of searching for this field after ingested in Splunk.
@@ -72,11 +131,22 @@ public final class JsonEvent extends Event {
             return this;
         }
 
-        if (fields == null) {
-            fields = new HashMap<>();
+        if (templateFields && template.hasTiedFields()) {
+            // tied fields are added last, so that they keep winning over fields with the same name
+            fields = fields == null ? new HashMap<>() : new HashMap<>(fields);
+            fields.putAll(extraFields);
+            template.putTiedFields(fields, getTied());
+        } else {
+            if (fields == null) {
+                fields = new HashMap<>();
+            } else if (fieldsShared) {
+                fields = new HashMap<>(fields);
+            }
+            fields.putAll(extraFields);
         }
+        fieldsShared = false;
+        templateFields = false;
 
-        fields.putAll(extraFields);
         invalidate();
 
         return this;
@@ -86,6 +156,8 @@ public final class JsonEvent extends Event {
      * ExtraFields consist of custom fields used for enriching events to be bundled in with the base Event. This can
      * used to categorize certain events, allowing flexibility of searching for this field after ingested in Splunk.
      * This differs from the addFields method as it will replace any fields that are currently associated to this object.
+     * The map is referenced rather than copied so that events can share it, fields added later with addFields go to a
+     * copy of it.
      *
      * @param extraFields  Object representation of the event with associated meta-data.
      * @return             Current representation of JsonEvent.
@@ -93,8 +165,11 @@ public final class JsonEvent extends Event {
      * @since              1.0
      */
     @Override
+    @JsonProperty(FIELDS)
     public JsonEvent setFields(final Map<String, String> extraFields) {
         fields = extraFields;
+        fieldsShared = extraFields != null;
+        templateFields = false;
         invalidate();
         return this;
     }
@@ -103,15 +178,77 @@ public final class JsonEvent extends Event {
      * ExtraFields consist of custom fields used for enriching events to be bundled in with the base Event. This can
      * used to categorize certain events, allowing flexibility of searching for this field after ingested in Splunk.
      *
+     * The channel field of the batch the event is in is part of the fields.
+     *
      * @return             Map representation of fields
      * @see                Map
      * @since              1.0
      */
     @Override
+    @JsonIgnore
     public Map<String, String> getFields() {
+        Map<String, String> ownFields = getOwnFields();
+        ChannelField field = channel == null ? null : channel.field;
+        if (field == null || ownFields != null && ownFields.containsKey(ChannelField.NAME)) {
+            return ownFields;
+        }
+
+        Map<String, String> allFields = ownFields == null ? new HashMap<>() : new HashMap<>(ownFields);
+        allFields.put(ChannelField.NAME, field.value);
+        return allFields;
+    }
+
+    // the fields which are serialized, the channel field is written into the serialized event when it is sent
+    @JsonProperty(FIELDS)
+    private Map<String, String> getOwnFields() {
+        if (templateFields && template.hasTiedFields()) {
+            return template.fieldsOf(getTied());
+        }
         return fields;
     }
 
+    void setChannelBinding(final EventBatch.ChannelBinding channel) {
+        this.channel = channel;
+    }
+
+    // see ChannelField
+    int channelFieldKind() {
+        if (templateFields) {
+            return template.channelFieldKind();
+        }
+        if (fields == null) {
+            return ChannelField.NO_FIELDS;
+        }
+        if (fields.containsKey(ChannelField.NAME)) {
+            return ChannelField.HELD;
+        }
+        return fields.isEmpty() ? ChannelField.EMPTY_FIELDS : ChannelField.FIELDS;
+    }
+
+    @Override
+    SerializableString boundChannelField() {
+        ChannelField field = channel == null ? null : channel.field;
+        return field == null ? null : field.encodedFor(channelFieldKind());
+    }
+
+    @Override
+    int channelFieldOffset(final int length) {
+        if (fieldsEnd >= 0) {
+            return fieldsEnd;
+        }
+        return channelFieldKind() == ChannelField.NO_FIELDS ? length - 1 : length - 2;
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        fieldsEnd = -1;
+    }
+
+    boolean hasTemplateFields() {
+        return templateFields;
+    }
+
     /**
      * Using ObjectMapper the JsonEvent is serialized to a String and returned.
      *
@@ -150,11 +287,41 @@ public final class JsonEvent extends Event {
         }
 
         try {
-            bytes = jsonMapper.writeValueAsBytes(this);
+            if (template != null && template.appliesTo(this)) {
+                bytes = writeWithTemplate();
+            } else {
+                bytes = jsonMapper.writeValueAsBytes(this);
+            }
         } catch (Exception ex) {
             log.error("Invalid json event", ex);
             throw new HecException("Failed to json marshal the event", ex);
         }
         return bytes;
     }
+
+    @Override
+    protected void serialize(JsonGenerator gen) throws IOException {
+        SerializableString channelField = boundChannelField();
+        if (template != null && template.appliesTo(this)) {
+            template.write(gen, this, channelField);
+        } else if (channelField == null) {
+            streamWriter.writeValue(gen, this);
+        } else {
+            // the bytes are not kept when the batch is streamed, the channel field is written into them nonetheless
+            byte[] data = jsonMapper.writeValueAsBytes(this);
+            int at = channelFieldOffset(data.length);
+            writeRaw(gen, data, 0, at);
+            gen.writeRaw(channelField);
+            writeRaw(gen, data, at, data.length - at);
+        }
+    }
+
+    private byte[] writeWithTemplate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(template.length() + 128);
+        try (JsonGenerator gen = jsonMapper.getFactory().createGenerator(out)) {
+            gen.setRootValueSeparator(null);
+            template.write(gen, this, null);
+        }
+        return out.toByteArray();
+    }
 }
@@ -25,7 +25,10 @@ public final class JsonEventBatch extends EventBatch {
     public void add(Event event) {
         if (event instanceof JsonEvent) {
             events.add(event);
-            len += event.length();
+            if (!isEnableStreaming()) {
+                len += event.length();
+            }
+            bindChannel((JsonEvent) event);
         } else {
             throw new HecException("only JsonEvent can be add to JsonEventBatch");
         }
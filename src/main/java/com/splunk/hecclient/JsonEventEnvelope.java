@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JsonEventEnvelope checks with a streaming parser that bytes already hold a HEC formatted json event, without
+ * binding the event data, and splices extra fields into the bytes so that they can be forwarded as they are.
+ * Only the envelope keys are looked at: "event", the metadata keys and "fields". Anything else, duplicated keys,
+ * and extra fields which would overwrite fields already in the event make the bytes be rejected.
+ *
+ * @since 2.2.3
+ */
+final class JsonEventEnvelope {
+    private static final String EVENT = "event";
+    private static final String FIELDS = "fields";
+    private static final byte[] FIELDS_PREFIX = ",\"fields\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final JsonFactory factory = Event.jsonMapper.getFactory();
+
+    private JsonEventEnvelope() {
+    }
+
+    // returns null when the bytes are not a HEC event which can be forwarded as is
+    static JsonEvent parse(final byte[] data, final int offset, final int length,
+                           final Map<String, String> extraFields, final Object tied) {
+        JsonEvent event = new JsonEvent();
+        Map<String, String> fields = null;
+        int fieldsEnd = -1; // position of the closing brace of "fields"
+        int end; // position of the closing brace of the event
+
+        try (JsonParser parser = factory.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case EVENT:
+                        if (event.event != null || (event.event = readEventData(parser, value, data, offset)) == null) {
+                            return null;
+                        }
+                        break;
+                    case Event.TIME:
+                        if (event.hasTime || !value.isNumeric()) {
+                            return null;
+                        }
+                        double time = parser.getDoubleValue();
+                        event.putTime(time, DoubleSerializer.toMicros(time));
+                        break;
+                    case Event.HOST:
+                        if (event.host != null || (event.host = readString(parser, value)) == null) {
+                            return null;
+                        }
+                        break;
+                    case Event.SOURCE:
+                        if (event.source != null || (event.source = readString(parser, value)) == null) {
+                            return null;
+                        }
+                        break;
+                    case Event.SOURCETYPE:
+                        if (event.sourcetype != null || (event.sourcetype = readString(parser, value)) == null) {
+                            return null;
+                        }
+                        break;
+                    case Event.INDEX:
+                        if (event.index != null || (event.index = readString(parser, value)) == null) {
+                            return null;
+                        }
+                        break;
+                    case FIELDS:
+                        if (fields != null || value != JsonToken.START_OBJECT || (fields = readFields(parser)) == null) {
+                            return null;
+                        }
+                        fieldsEnd = (int) parser.getTokenLocation().getByteOffset();
+                        break;
+                    default:
+                        return null;
+                }
+            }
+
+            if (token != JsonToken.END_OBJECT || event.event == null) {
+                return null;
+            }
+            end = (int) parser.getTokenLocation().getByteOffset();
+
+            if (parser.nextToken() != null) {
+                return null;
+            }
+        } catch (IOException | HecException ex) {
+            return null;
+        }
+
+        byte[] bytes;
+        // the channel field goes before the closing brace of the fields, or of the event when it has no fields
+        int channelFieldAt = fields != null ? fieldsEnd : end;
+        if (extraFields == null || extraFields.isEmpty()) {
+            bytes = slice(data, offset, length);
+        } else if (fields != null) {
+            for (String name: extraFields.keySet()) {
+                if (fields.containsKey(name)) {
+                    return null;
+                }
+            }
+
+            byte[] extra = encodeFields(extraFields);
+            // drop the braces of the encoded fields, and prefix a comma unless "fields" is empty
+            int skip = fields.isEmpty() ? 1 : 0;
+            if (skip == 0) {
+                extra[0] = ',';
+            }
+            bytes = splice(data, offset, length, fieldsEnd, null, extra, skip, extra.length - 1 - skip);
+            channelFieldAt += extra.length - 1 - skip;
+            fields.putAll(extraFields);
+        } else {
+            byte[] extra = encodeFields(extraFields);
+            bytes = splice(data, offset, length, end, FIELDS_PREFIX, extra, 0, extra.length);
+            channelFieldAt += FIELDS_PREFIX.length + extra.length - 1;
+            fields = new HashMap<>(extraFields);
+        }
+
+        if (fields != null) {
+            event.setFields(fields);
+        }
+        event.setTied(tied);
+        event.bytes = bytes;
+        event.fieldsEnd = channelFieldAt;
+        return event;
+    }
+
+    private static Object readEventData(final JsonParser parser, final JsonToken value, final byte[] data,
+                                        final int offset) throws IOException {
+        switch (value) {
+            case VALUE_STRING:
+                String text = parser.getText();
+                return text.isEmpty() ? null : text;
+            case START_OBJECT:
+            case START_ARRAY:
+                // keep the original json of the event data instead of binding it
+                int start = (int) parser.getTokenLocation().getByteOffset();
+                parser.skipChildren();
+                int len = (int) parser.getTokenLocation().getByteOffset() + 1 - start;
+                return new RawValue(new String(data, offset + start, len, StandardCharsets.UTF_8));
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return new RawValue(parser.getText());
+            default:
+                return null;
+        }
+    }
+
+    private static String readString(final JsonParser parser, final JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+    }
+
+    private static Map<String, String> readFields(final JsonParser parser) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.VALUE_STRING || fields.put(name, parser.getText()) != null) {
+                return null;
+            }
+        }
+        return token == JsonToken.END_OBJECT ? fields : null;
+    }
+
+    private static byte[] encodeFields(final Map<String, String> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = factory.createGenerator(out)) {
+            gen.writeStartObject();
+            for (Map.Entry<String, String> field: fields.entrySet()) {
+                gen.writeStringField(field.getKey(), field.getValue());
+            }
+            gen.writeEndObject();
+        } catch (IOException ex) {
+            throw new HecException("Failed to json marshal the fields", ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] slice(final byte[] data, final int offset, final int length) {
+        if (offset == 0 && length == data.length) {
+            return data;
+        }
+
+        byte[] bytes = new byte[length];
+        System.arraycopy(data, offset, bytes, 0, length);
+        return bytes;
+    }
+
+    // inserts prefix and extra[extraOffset, extraOffset + extraLength) at position at of the event bytes
+    private static byte[] splice(final byte[] data, final int offset, final int length, final int at,
+                                 final byte[] prefix, final byte[] extra, final int extraOffset, final int extraLength) {
+        int prefixLength = prefix == null ? 0 : prefix.length;
+        byte[] bytes = new byte[length + prefixLength + extraLength];
+        System.arraycopy(data, offset, bytes, 0, at);
+        if (prefix != null) {
+            System.arraycopy(prefix, 0, bytes, at, prefixLength);
+        }
+        System.arraycopy(extra, extraOffset, bytes, at + prefixLength, extraLength);
+        System.arraycopy(data, offset + at, bytes, at + prefixLength + extraLength, length - at);
+        return bytes;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JsonEventTemplate holds the metadata and the fields shared by events, typically the events of a topic, together
+ * with their json encoding. Events created from a template are serialized by copying the encoded metadata and fields,
+ * only their time and event data are encoded for every event.
+ * <p>
+ * The encoding is the one Jackson produces for a JsonEvent. It is used for as long as the event holds the metadata and
+ * the fields of its template, an event whose metadata or fields are changed afterwards is serialized as any other.
+ * Fields which differ for every event, such as the Kafka coordinates of the record of the event, are TiedFields. Only
+ * their names are encoded in the template, their values are read from the object the event is tied to and written
+ * after the other fields, with no map built for the event. Templates are immutable and can be shared between threads.
+ *
+ * @see     JsonEvent#setTemplate(JsonEventTemplate)
+ * @since   2.2.3
+ */
+public final class JsonEventTemplate {
+    private static final SerializedString TIME_PREFIX = new SerializedString("{\"" + Event.TIME + "\":");
+    private static final SerializedString END = new SerializedString("}");
+    private static final SerializedString FIELDS_END = new SerializedString("}}");
+    private static final TiedField[] NO_TIED_FIELDS = {};
+
+    final String index;
+    final String source;
+    final String sourcetype;
+    final String host;
+    final Map<String, String> fields;
+    private final TiedField[] tiedFields;
+
+    // '{' then the metadata, each followed by a comma, and "event":
+    private final SerializableString head;
+    // the same after the time, starting with the comma which follows it
+    private final SerializableString headAfterTime;
+    // ,"fields":{... without its closing brace, null when the events have no fields
+    private final SerializableString fieldsHead;
+    // names of the tied fields, written after fieldsHead, each with the comma before it if any
+    private final SerializableString[] tiedNames;
+    // where the channel field goes in the events, see ChannelField
+    private final int channelFieldKind;
+
+    /**
+     * Creates a template, null metadata and fields are left out of the events as they are for any JsonEvent.
+     *
+     * @param index       Splunk index of the events.
+     * @param source      Source of the events.
+     * @param sourcetype  Sourcetype of the events.
+     * @param host        Host of the events.
+     * @param fields      Fields of the events. The map is shared by the events and must not be modified afterwards.
+     * @since             2.2.3
+     */
+    public JsonEventTemplate(final String index, final String source, final String sourcetype, final String host,
+                             final Map<String, String> fields) {
+        this(index, source, sourcetype, host, fields, NO_TIED_FIELDS);
+    }
+
+    /**
+     * Creates a template whose events also hold tied fields, whose values are read from the objects the events are
+     * tied to. Tied fields win over fields with the same name.
+     *
+     * @param index       Splunk index of the events.
+     * @param source      Source of the events.
+     * @param sourcetype  Sourcetype of the events.
+     * @param host        Host of the events.
+     * @param fields      Fields of the events. The map is shared by the events and must not be modified afterwards.
+     * @param tiedFields  Fields whose values are read from the objects the events are tied to.
+     * @since             2.2.3
+     */
+    public JsonEventTemplate(final String index, final String source, final String sourcetype, final String host,
+                             final Map<String, String> fields, final TiedField... tiedFields) {
+        this.index = index;
+        this.source = source;
+        this.sourcetype = sourcetype;
+        this.host = host;
+        this.fields = fields;
+        this.tiedFields = tiedFields.clone();
+
+        // same order as the properties of a serialized JsonEvent
+        String metadata = encode(gen -> {
+            writeMetadata(gen, Event.SOURCE, source);
+            writeMetadata(gen, Event.SOURCETYPE, sourcetype);
+            writeMetadata(gen, Event.HOST, host);
+            writeMetadata(gen, Event.INDEX, index);
+            gen.writeRaw("\"event\":");
+        });
+        head = prime(new SerializedString("{" + metadata));
+        headAfterTime = prime(new SerializedString("," + metadata));
+
+        Set<String> tiedFieldNames = new HashSet<>();
+        for (TiedField field: tiedFields) {
+            tiedFieldNames.add(field.getName());
+        }
+        // the fields but the ones overridden by tied fields, which are written after them
+        int[] staticFields = {0};
+        String fieldsObject = fields == null && tiedFields.length == 0 ? null : encode(gen -> {
+            gen.writeStartObject();
+            if (fields != null) {
+                for (Map.Entry<String, String> field: fields.entrySet()) {
+                    if (!tiedFieldNames.contains(field.getKey())) {
+                        gen.writeStringField(field.getKey(), field.getValue());
+                        staticFields[0]++;
+                    }
+                }
+            }
+            gen.writeEndObject();
+        });
+
+        tiedNames = new SerializableString[tiedFields.length];
+        if (fieldsObject == null) {
+            fieldsHead = null;
+            channelFieldKind = ChannelField.NO_FIELDS;
+        } else {
+            // leave the fields object open for the tied fields and the channel field
+            fieldsHead = prime(new SerializedString(",\"fields\":" + fieldsObject.substring(0, fieldsObject.length() - 1)));
+            for (int i = 0; i < tiedFields.length; i++) {
+                String name = tiedFields[i].getName();
+                String encoded = encode(gen -> gen.writeString(name)) + ":";
+                tiedNames[i] = prime(new SerializedString(i == 0 && staticFields[0] == 0 ? encoded : "," + encoded));
+            }
+
+            if (tiedFieldNames.contains(ChannelField.NAME) || fields != null && fields.containsKey(ChannelField.NAME)) {
+                channelFieldKind = ChannelField.HELD;
+            } else if (staticFields[0] == 0 && tiedFields.length == 0) {
+                channelFieldKind = ChannelField.EMPTY_FIELDS;
+            } else {
+                channelFieldKind = ChannelField.FIELDS;
+            }
+        }
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSourcetype() {
+        return sourcetype;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    public boolean hasTiedFields() {
+        return tiedFields.length != 0;
+    }
+
+    /**
+     * Builds the fields of an event created from this template, tied fields included.
+     *
+     * @param tied  Object the event is tied to.
+     * @return      A new map holding the fields and the values of the tied fields for the event.
+     * @since       2.2.3
+     */
+    public Map<String, String> fieldsOf(final Object tied) {
+        Map<String, String> eventFields = fields == null ? new HashMap<>() : new HashMap<>(fields);
+        putTiedFields(eventFields, tied);
+        return eventFields;
+    }
+
+    void putTiedFields(final Map<String, String> eventFields, final Object tied) {
+        for (TiedField field: tiedFields) {
+            eventFields.put(field.getName(), field.value(tied));
+        }
+    }
+
+    // true while the event holds the very metadata and fields of this template
+    boolean appliesTo(final JsonEvent event) {
+        return event.index == index && event.source == source && event.sourcetype == sourcetype
+                && event.host == host && event.hasTemplateFields();
+    }
+
+    int channelFieldKind() {
+        return channelFieldKind;
+    }
+
+    // writes the event as a root value of gen, whose root value separator is expected to be null, along with the
+    // encoded channel field when it is not null
+    void write(final JsonGenerator gen, final JsonEvent event, final SerializableString channelField)
+            throws IOException {
+        if (!event.hasTime) {
+            gen.writeRaw(head);
+        } else {
+            gen.writeRaw(TIME_PREFIX);
+            if (event.epochMicros != DoubleSerializer.NO_TIME) {
+                DoubleSerializer.writeMicros(gen, event.epochMicros);
+            } else {
+                DoubleSerializer.write(gen, event.epochSeconds);
+            }
+            gen.writeRaw(headAfterTime);
+        }
+        Event.streamWriter.writeValue(gen, event.event);
+        if (fieldsHead == null) {
+            if (channelField != null) {
+                gen.writeRaw(channelField);
+            }
+            gen.writeRaw(END);
+            return;
+        }
+
+        gen.writeRaw(fieldsHead);
+        if (tiedFields.length != 0) {
+            Object tied = event.getTied();
+            for (int i = 0; i < tiedFields.length; i++) {
+                gen.writeRaw(tiedNames[i]);
+                tiedFields[i].writeValue(gen, tied);
+            }
+        }
+        if (channelField != null) {
+            gen.writeRaw(channelField);
+        }
+        gen.writeRaw(FIELDS_END);
+    }
+
+    // size of the encoded template, for sizing buffers
+    int length() {
+        return head.charLength() + (fieldsHead == null ? 1 : fieldsHead.charLength() + 2);
+    }
+
+    private static void writeMetadata(final JsonGenerator gen, final String name, final String value) throws IOException {
+        if (value != null) {
+            gen.writeString(name);
+            gen.writeRaw(':');
+            gen.writeString(value);
+            gen.writeRaw(',');
+        }
+    }
+
+    private static String encode(final Encoder encoder) {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = Event.jsonMapper.getFactory().createGenerator(out)) {
+            gen.setRootValueSeparator(null);
+            encoder.encode(gen);
+        } catch (IOException ex) {
+            throw new HecException("Failed to json marshal the event template", ex);
+        }
+        return out.toString();
+    }
+
+    // encodes the UTF-8 bytes once, instead of on the first write
+    private static SerializedString prime(final SerializedString text) {
+        text.asUnquotedUTF8();
+        return text;
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        void encode(JsonGenerator gen) throws IOException;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import com.sun.security.auth.module.Krb5LoginModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.security.Principal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * KerberosLogin logs a principal in from its keytab once and caches the resulting Subject, so requests don't
+ * hit the KDC on their own. The TGT is refreshed on a background thread before it expires. One KerberosLogin is
+ * shared by all the indexers which use the same principal and keytab: forConfig() takes a reference to it and
+ * release() gives it back, the last release stops the refreshes and drops the Subject. The counters of the shared
+ * logins are exposed over JMX, see KerberosLoginMXBean. KerberosLogin is multi-thread safe.
+ *
+ * @since 2.2.3
+ */
+final class KerberosLogin implements KerberosLoginMXBean {
+    private static final Logger log = LoggerFactory.getLogger(KerberosLogin.class);
+    private static final ConcurrentHashMap<String, KerberosLogin> logins = new ConcurrentHashMap<>();
+
+    static final double REFRESH_WINDOW_FACTOR = 0.8; // refresh after 80% of the ticket lifetime
+    static final long MIN_REFRESH_INTERVAL = 60 * 1000; // 1 min, also the retry interval after a failed refresh
+    static final long DEFAULT_REFRESH_INTERVAL = 60 * 60 * 1000; // 1 hour, when no TGT is found in the Subject
+
+    interface Login {
+        Subject login() throws LoginException;
+    }
+
+    private final Login login;
+    private final ScheduledThreadPoolExecutor refresher;
+    private ScheduledFuture<?> nextRefresh; // guarded by this
+    private boolean closed; // guarded by this
+    // set for the logins shared through forConfig()
+    private String key;
+    private int references; // guarded by the entry of key in logins
+    private ObjectName name;
+    private volatile Subject subject;
+    private volatile long expiry; // in milliseconds, 0 when unknown
+
+    private final AtomicLong loginCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong failedLoginCount = new AtomicLong();
+    private final AtomicLong totalLoginLatency = new AtomicLong(); // in milliseconds
+    private volatile long lastLoginLatency; // in milliseconds
+
+    // takes a reference to the login shared by the indexers using the principal and keytab of config, every call must
+    // be matched by a call to release()
+    public static KerberosLogin forConfig(final HecConfig config) {
+        String principal = config.kerberosPrincipal();
+        String keytab = config.kerberosKeytabLocation();
+        return logins.compute(principal + "|" + keytab, (key, current) -> {
+            KerberosLogin shared = current;
+            if (shared == null) {
+                shared = new KerberosLogin(keytabLogin(principal, keytab));
+                shared.key = key;
+                shared.register(principal, keytab);
+            }
+            shared.references++;
+            return shared;
+        });
+    }
+
+    KerberosLogin(Login login) {
+        this.login = login;
+        ThreadFactory f = (Runnable r) -> {
+            Thread t = new Thread(r, "HEC-kerberos-refresher");
+            t.setDaemon(true);
+            return t;
+        };
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, f);
+        executor.setRemoveOnCancelPolicy(true);
+        this.refresher = executor;
+    }
+
+    // returns the cached Subject, logging in first when there is none yet or when it has already expired
+    public Subject getSubject() throws LoginException {
+        Subject current = subject;
+        if (current != null && !isExpired()) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (subject == null || isExpired()) {
+                doLogin();
+            }
+            return subject;
+        }
+    }
+
+    public long getLoginCount() {
+        return loginCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getFailedLoginCount() {
+        return failedLoginCount.get();
+    }
+
+    public long getLastLoginLatency() {
+        return lastLoginLatency;
+    }
+
+    public long getTotalLoginLatency() {
+        return totalLoginLatency.get();
+    }
+
+    // gives back a reference taken with forConfig(), the login is closed once no indexer uses it
+    void release() {
+        if (key == null) {
+            close();
+            return;
+        }
+        logins.computeIfPresent(key, (k, current) -> {
+            if (current != this || --references > 0) {
+                return current;
+            }
+            close();
+            return null;
+        });
+    }
+
+    int getReferences() {
+        return references;
+    }
+
+    void close() {
+        synchronized (this) {
+            closed = true;
+            nextRefresh = null;
+            subject = null;
+        }
+        refresher.shutdownNow();
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ex) {
+                log.warn("failed to unregister {}", name, ex);
+            }
+            name = null;
+        }
+    }
+
+    private void register(final String principal, final String keytab) {
+        try {
+            ObjectName objectName = new ObjectName("com.splunk.hecclient:type=KerberosLogin,principal="
+                    + ObjectName.quote(String.valueOf(principal)) + ",keytab=" + ObjectName.quote(String.valueOf(keytab)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            name = objectName;
+        } catch (JMException ex) {
+            log.warn("failed to register the kerberos login metrics of {}", principal, ex);
+        }
+    }
+
+    private boolean isExpired() {
+        return expiry > 0 && System.currentTimeMillis() >= expiry;
+    }
+
+    private void doLogin() throws LoginException {
+        long start = System.currentTimeMillis();
+        Subject fresh;
+        try {
+            fresh = login.login();
+        } catch (LoginException ex) {
+            failedLoginCount.incrementAndGet();
+            throw ex;
+        } finally {
+            lastLoginLatency = System.currentTimeMillis() - start;
+            totalLoginLatency.addAndGet(lastLoginLatency);
+        }
+
+        loginCount.incrementAndGet();
+        subject = fresh;
+        long delay = scheduleRefresh(fresh);
+        log.info("kerberos login took {} ms, next refresh in {} seconds", lastLoginLatency, delay / 1000);
+    }
+
+    private long scheduleRefresh(final Subject current) {
+        KerberosTicket tgt = findTgt(current);
+        long now = System.currentTimeMillis();
+        long delay;
+        if (tgt != null && tgt.getEndTime() != null) {
+            long start = tgt.getStartTime() != null ? tgt.getStartTime().getTime() : now;
+            expiry = tgt.getEndTime().getTime();
+            delay = start + (long) ((expiry - start) * REFRESH_WINDOW_FACTOR) - now;
+        } else {
+            expiry = 0;
+            delay = DEFAULT_REFRESH_INTERVAL;
+        }
+
+        delay = Math.max(delay, MIN_REFRESH_INTERVAL);
+        schedule(delay);
+        return delay;
+    }
+
+    // replaces the refresh scheduled, if any, so that a single chain of refreshes runs whatever triggered the login
+    private synchronized void schedule(final long delay) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+        if (closed) {
+            return;
+        }
+        try {
+            nextRefresh = refresher.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            log.debug("kerberos login is closed, no refresh is scheduled");
+        }
+    }
+
+    // number of refreshes waiting to run, cancelled ones are removed from the queue
+    int getScheduledRefreshes() {
+        return refresher.getQueue().size();
+    }
+
+    void refresh() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                doLogin();
+                refreshCount.incrementAndGet();
+            } catch (Exception ex) {
+                // keep using the current ticket while it is still valid
+                log.error("failed to refresh kerberos login, will retry in {} seconds", MIN_REFRESH_INTERVAL / 1000, ex);
+                schedule(MIN_REFRESH_INTERVAL);
+            }
+        }
+    }
+
+    static KerberosTicket findTgt(final Subject current) {
+        for (KerberosTicket ticket : current.getPrivateCredentials(KerberosTicket.class)) {
+            KerberosPrincipal server = ticket.getServer();
+            if (server != null && server.getName().equals("krbtgt/" + server.getRealm() + "@" + server.getRealm())) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    private static Login keytabLogin(final String principal, final String keytab) {
+        final Configuration config = new Configuration() {
+            @Override
+            public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+                return new AppConfigurationEntry[]{
+                    new AppConfigurationEntry(Krb5LoginModule.class.getName(),
+                        AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, kerberosConfigMap(principal, keytab))
+                };
+            }
+        };
+
+        return () -> {
+            Set<Principal> principals = new HashSet<>(1);
+            principals.add(new KerberosPrincipal(principal));
+            Subject subject = new Subject(false, principals, new HashSet<>(), new HashSet<>());
+            LoginContext lc = new LoginContext("SplunkSinkConnector", subject, null, config);
+            lc.login();
+            return lc.getSubject();
+        };
+    }
+
+    /**
+     * Creates the Kerberos configurations.
+     *
+     * @return map of kerberos configs
+     */
+    private static Map<String, Object> kerberosConfigMap(String principal, String keytab) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put("useTicketCache", "true");
+        configs.put("renewTGT", "true");
+        configs.put("useKeyTab", "true");
+        configs.put("keyTab", keytab);
+        configs.put("refreshKrb5Config", "true");
+        configs.put("principal", principal);
+        configs.put("storeKey", "false");
+        configs.put("doNotPrompt", "true");
+        return configs;
+    }
+}
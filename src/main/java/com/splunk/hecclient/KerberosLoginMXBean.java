@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+/**
+ * KerberosLoginMXBean exposes the logins of a Kerberos principal over JMX, under the ObjectName
+ * com.splunk.hecclient:type=KerberosLogin,principal=&lt;principal&gt;,keytab=&lt;keytab path&gt;.
+ *
+ * @since 2.2.3
+ */
+public interface KerberosLoginMXBean {
+    // successful logins, the first one included
+    long getLoginCount();
+
+    // successful background refreshes of the TGT
+    long getRefreshCount();
+
+    long getFailedLoginCount();
+
+    // duration of the last login in milliseconds
+    long getLastLoginLatency();
+
+    // duration of all the logins in milliseconds
+    long getTotalLoginLatency();
+}
@@ -16,29 +16,54 @@
 package com.splunk.hecclient;
 
 import org.apache.http.Header;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicHeader;
-import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public final class LoadBalancer implements LoadBalancerInf {
     private static final Logger log = LoggerFactory.getLogger(LoadBalancer.class);
 
-    private List<HecChannel> channels;
-    private int index;
+    private static final HecChannel[] NO_CHANNELS = {};
+    private static final AtomicInteger ids = new AtomicInteger();
+    // a batch waiting for a channel with room is woken up when a POST finishes, and at this interval at the latest,
+    // for the byte rates and the circuit breakers which let batches through as time goes by
+    private static final long CAPACITY_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long ABORTED_CHECK_GRACE_MILLIS = 100;
+
+    // copied on write under the lock, so that send() picks a channel without taking it
+    private volatile HecChannel[] channels;
+    private final ChannelSelector selector;
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>(); // by indexer URI, guarded by this
+    private final Map<String, AimdLimiter> limiters = new HashMap<>(); // by indexer URI, guarded by this
+    // signaled when a POST finishes while batches wait for room, see awaitChannel()
+    private final ReentrantLock capacityLock = new ReentrantLock();
+    private final Condition capacityReleased = capacityLock.newCondition();
+    private final AtomicInteger capacityWaiters = new AtomicInteger();
+    // set when a batch waited in vain, the next batches don't wait until a POST finishes. A put() sending several
+    // batches is held up for one wait at most, not one per batch
+    private volatile boolean saturated;
     private ConcurrentHashMap<String, List<HecChannel>> indexerInfo; // Map of indexer URI to Channels for that indexer
     private Set<String> discardedIndexers;
     // Used for health check
+    private final String id = String.valueOf(ids.incrementAndGet());
+    private final Map<String, IndexerHealth> health = new ConcurrentHashMap<>(); // by indexer URI
     private CloseableHttpClient httpClient;
-    private HttpContext context;
+    private RequestConfig healthCheckConfig;
+    private ExecutorService healthCheckExecutor;
     private HecConfig hecConfig;
     private boolean keepAlive;
     private Header[] headers;
@@ -48,13 +73,28 @@ public final class LoadBalancer implements LoadBalancerInf {
 
     public LoadBalancer(HecConfig hecConfig, CloseableHttpClient client) {
         stopped = false;
-        channels = new ArrayList<>();
+        channels = NO_CHANNELS;
+        selector = ChannelSelectors.forName(hecConfig.getLbPolicy());
         indexerInfo = new ConcurrentHashMap<>();
         discardedIndexers = new HashSet<>();
-        index = 0;
         this.httpClient = client;
         this.hecConfig = hecConfig;
-        this.context = HttpClientContext.create();
+        // health checks have their own timeouts, so that a host which does not answer is taken out quickly. They lease
+        // their connections from the pool of the data posts, a check which gets none within half of its timeout
+        // leaves the indexer as it is: a busy indexer is not an unhealthy one
+        int healthCheckTimeout = (int) TimeUnit.SECONDS.toMillis(hecConfig.getHealthCheckTimeout());
+        healthCheckConfig = RequestConfig.custom()
+                .setCookieSpec(CookieSpecs.STANDARD)
+                .setConnectionRequestTimeout(Math.max(healthCheckTimeout / 2, 1))
+                .setConnectTimeout(healthCheckTimeout)
+                .setSocketTimeout(healthCheckTimeout)
+                .build();
+        ThreadFactory f = (Runnable r) -> {
+            Thread t = new Thread(r, "HEC-health-check");
+            t.setDaemon(true);
+            return t;
+        };
+        healthCheckExecutor = Executors.newCachedThreadPool(f);
         // Init headers
         headers = new Header[1];
         headers[0] = new BasicHeader("Authorization", String.format("Splunk %s", hecConfig.getToken()));
@@ -81,100 +121,279 @@ public final class LoadBalancer implements LoadBalancerInf {
     @Override
     public synchronized void add(String indexerUrl, HecChannel channel) {
         log.debug("Adding indexer {} and channel {} to loadbalancer", indexerUrl, channel);
+        if (!breakers.containsKey(indexerUrl)) {
+            breakers.put(indexerUrl, CircuitBreaker.forConfig(indexerUrl, hecConfig));
+            health.put(indexerUrl, IndexerHealth.register(id, indexerUrl));
+        }
+        channel.getStats().setCircuitBreaker(breakers.get(indexerUrl));
+        if (hecConfig.getEnableRateControl()) {
+            // the limits are the ones of the indexer, whichever of its channels is pushed back
+            AimdLimiter limiter = limiters.get(indexerUrl);
+            if (limiter == null) {
+                limiter = new AimdLimiter(hecConfig.getMaxHttpConnectionPerChannel(), System.nanoTime(),
+                        this::releaseCapacity);
+                limiters.put(indexerUrl, limiter);
+            } else {
+                limiter.addChannel(hecConfig.getMaxHttpConnectionPerChannel());
+            }
+            channel.getStats().setLimiter(limiter);
+        }
         if(indexerInfo.containsKey(indexerUrl)) {
             indexerInfo.get(indexerUrl).add(channel);
         } else {
             indexerInfo.put(indexerUrl, new ArrayList<>());
             indexerInfo.get(indexerUrl).add(channel);
         }
-        channels.add(channel);
+        addChannels(Collections.singletonList(channel));
     }
 
     @Override
     public synchronized void remove(HecChannel channel) {
         log.debug("Removing channel {} from loadbalancer", channel);
-        for (Iterator<HecChannel> iter = channels.listIterator(); iter.hasNext();) {
-            HecChannel ch = iter.next();
-            if (ch.equals(channel)) {
-                iter.remove();
-            }
-        }
+        List<HecChannel> remaining = new ArrayList<>(Arrays.asList(channels));
+        remaining.removeIf(ch -> ch.equals(channel));
+        channels = remaining.toArray(NO_CHANNELS);
     }
 
+    // this method is multi-thread safe and lock free
     @Override
-    public synchronized void send(final EventBatch batch) {
-        if (channels.isEmpty()) {
+    public void send(final EventBatch batch) {
+        HecChannel[] current = channels;
+        if (current.length == 0) {
             throw new HecException("No channels are available / registered with LoadBalancer");
         }
 
-        for (int tried = 0; tried != channels.size(); tried++) {
-            HecChannel channel = channels.get(index);
-            index = (index + 1) % channels.size();
-            if (!channel.hasBackPressure() && !channel.isNotAvailable()) {
-                channel.send(batch);
-                return;
+        HecChannel channel = select(current, batch);
+        if (channel == null && hecConfig.getEnableRateControl() && !saturated && isRateLimited(current)) {
+            channel = awaitChannel(batch);
+            if (channel == null) {
+                saturated = true;
             }
         }
-
-        // all indexers have back pressure
-        throw new HecException("All channels have back pressure");
+        if (channel == null) {
+            // all indexers have back pressure
+            throw new HecException("All channels have back pressure");
+        }
+        channel.send(batch);
     }
 
     @Override
     public int size() {
-        return channels.size();
+        return channels.length;
+    }
+
+    private HecChannel select(final HecChannel[] current, final EventBatch batch) {
+        // the channel picked is checked out of the circuit breaker of its indexer, which fails when another batch took
+        // the probe of a half-open breaker in the meantime
+        for (int tried = 0; tried < current.length; tried++) {
+            HecChannel channel = selector.select(current);
+            if (channel == null || channel.getStats().tryAcquire(batch)) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    // true when a channel is held back by the limits of its indexer only, rather than by its circuit breaker or its
+    // availability, which a POST finishing doesn't change
+    private static boolean isRateLimited(final HecChannel[] current) {
+        for (HecChannel channel : current) {
+            ChannelStats stats = channel.getStats();
+            if (stats.getLimiter() != null && !channel.isNotAvailable() && stats.allowsRequests() && !stats.hasCapacity()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // with rate control, the channels at their limits are not taken, so the batch waits for one of them to have room
+    // again, for as long as a POST may take at most
+    private HecChannel awaitChannel(final EventBatch batch) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(hecConfig.getSocketTimeout());
+        // waiters are counted before looking for a channel, so that a POST finishing from then on signals them
+        capacityWaiters.incrementAndGet();
+        capacityLock.lock();
+        try {
+            long remaining;
+            while (!stopped && (remaining = deadline - System.nanoTime()) > 0) {
+                HecChannel[] current = channels;
+                HecChannel channel = current.length == 0 ? null : select(current, batch);
+                if (channel != null) {
+                    return channel;
+                }
+                capacityReleased.awaitNanos(Math.min(remaining, CAPACITY_POLL_NANOS));
+            }
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            capacityLock.unlock();
+            capacityWaiters.decrementAndGet();
+        }
+    }
+
+    // called whenever a POST finishes, takes the lock only when batches are waiting
+    private void releaseCapacity() {
+        saturated = false;
+        if (capacityWaiters.get() == 0) {
+            return;
+        }
+        capacityLock.lock();
+        try {
+            capacityReleased.signalAll();
+        } finally {
+            capacityLock.unlock();
+        }
+    }
+
+    private void addChannels(final List<HecChannel> added) {
+        HecChannel[] current = channels;
+        HecChannel[] grown = Arrays.copyOf(current, current.length + added.size());
+        for (int i = 0; i < added.size(); i++) {
+            grown[current.length + i] = added.get(i);
+        }
+        channels = grown;
     }
 
     private void run() {
         log.debug("Running healthcheck at an interval of {} seconds", this.hecConfig.getlbPollInterval()/1000.0);
-            Enumeration<String> iter = indexerInfo.keys();
-            for (; iter.hasMoreElements();) {
-                String indexerToCheck = iter.nextElement();
-                try {
-                    indexerCheckResult(sendHealthCheckRequest(indexerToCheck), indexerToCheck);
-                } catch (Exception e) {
-                    indexerCheckResult(false, indexerToCheck);
-                    log.error("encountered exception when checking health of indexer {}, " +
-                            "this means indexer and its channels are removed from the loadbalancer", e.getMessage());
+        checkHealth();
+    }
+
+    // checks all the indexers concurrently, each for up to the health check timeout, then adds or removes the channels
+    // of the indexers whose health changed at once
+    void checkHealth() {
+        List<String> indexers = new ArrayList<>(indexerInfo.keySet());
+        Map<String, HttpGet> requests = new HashMap<>();
+        Map<String, Future<Boolean>> checks = new HashMap<>();
+        for (String indexer : indexers) {
+            HttpGet request = healthCheckRequest(indexer);
+            requests.put(indexer, request);
+            try {
+                checks.put(indexer, healthCheckExecutor.submit(() -> probe(indexer, request)));
+            } catch (RejectedExecutionException ex) {
+                // closed in the meantime
+                return;
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(hecConfig.getHealthCheckTimeout());
+        Map<String, Boolean> results = new HashMap<>();
+        for (String indexer : indexers) {
+            boolean success = false;
+            try {
+                success = checks.get(indexer).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                requests.get(indexer).abort();
+                awaitAborted(checks.get(indexer));
+                log.error("healthcheck of indexer {} timed out after {} seconds, " +
+                        "this means indexer and its channels are removed from the loadbalancer",
+                        indexer, hecConfig.getHealthCheckTimeout());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ConnectionPoolTimeoutException) {
+                    log.warn("no connection left in the pool to check the health of indexer {}, " +
+                            "its channels are kept as they are until the next check", indexer);
+                    continue;
                 }
+                log.error("encountered exception when checking health of indexer {}, " +
+                        "this means indexer and its channels are removed from the loadbalancer", indexer, e.getCause());
+            } catch (InterruptedException e) {
+                requests.values().forEach(HttpGet::abort);
+                Thread.currentThread().interrupt();
+                return;
             }
+            results.put(indexer, success);
+        }
+        indexerCheckResults(results);
+    }
 
+    // gives an aborted check a moment to record its latency, so that it is in place once checkHealth() returns
+    private static void awaitAborted(final Future<Boolean> check) {
+        try {
+            check.get(ABORTED_CHECK_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException ex) {
+            // expected, the check failed or is still stuck
+        } catch (InterruptedException ex) {
+            // the next wait of checkHealth() gives up
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private synchronized void indexerCheckResult(boolean success, String indexer) {
+    private boolean probe(final String indexer, final HttpGet request) throws IOException {
+        long start = System.nanoTime();
+        boolean probed = true;
+        try {
+            return sendHealthCheckRequest(request);
+        } catch (ConnectionPoolTimeoutException ex) {
+            // the indexer was not reached, there is no latency to record
+            probed = false;
+            throw ex;
+        } finally {
+            IndexerHealth indexerHealth = health.get(indexer);
+            if (indexerHealth != null && probed) {
+                indexerHealth.probed(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private synchronized void indexerCheckResults(Map<String, Boolean> results) {
         log.debug("indexerInfo map has {} ", indexerInfo);
         log.debug("discardedIndexers map has {} ", discardedIndexers);
-        log.debug("Channels List is : {}", channels);
-
-        if(success) {
-            if(discardedIndexers.contains(indexer)) {
-                log.info("healthcheck passed for {} indexer, adding this indexer and its channels to the loadbalancer, " +
-                        "this indexer was previously removed from loadbalancer", indexer);
-                // Add channels for this indexer as healthcheck passed
-                List<HecChannel> channelsToAdd = indexerInfo.get(indexer);
-                channelsToAdd.forEach((channel) -> channels.add(channel));
-                discardedIndexers.remove(indexer);
-                index = 0;
+        log.debug("Channels List is : {}", Arrays.asList(channels));
+
+        List<HecChannel> checked = new ArrayList<>(Arrays.asList(channels));
+        boolean changed = false;
+        for (Map.Entry<String, Boolean> result : results.entrySet()) {
+            String indexer = result.getKey();
+            IndexerHealth indexerHealth = health.get(indexer);
+            if (indexerHealth != null) {
+                indexerHealth.setHealthy(result.getValue());
             }
-        } else {
-            if(!discardedIndexers.contains(indexer)) {
-                log.info("healthcheck failed for {} indexer, removing this indexer and its channels from the loadbalancer", indexer);
-                // Remove channels for this indexer as healthcheck failed
-                List<HecChannel> channelsToRemove = indexerInfo.get(indexer);
-                channelsToRemove.forEach((channel) -> remove(channel));
-                discardedIndexers.add(indexer);
-                index = 0;
+
+            if(result.getValue()) {
+                if(discardedIndexers.remove(indexer)) {
+                    log.info("healthcheck passed for {} indexer, adding this indexer and its channels to the loadbalancer, " +
+                            "this indexer was previously removed from loadbalancer", indexer);
+                    // Add channels for this indexer as healthcheck passed
+                    checked.addAll(indexerInfo.get(indexer));
+                    changed = true;
+                }
+            } else {
+                if(discardedIndexers.add(indexer)) {
+                    log.info("healthcheck failed for {} indexer, removing this indexer and its channels from the loadbalancer", indexer);
+                    // Remove channels for this indexer as healthcheck failed
+                    checked.removeAll(indexerInfo.get(indexer));
+                    changed = true;
+                }
             }
         }
+        if (changed) {
+            channels = checked.toArray(NO_CHANNELS);
+        }
+    }
+
+    IndexerHealth getIndexerHealth(String indexerUrl) {
+        return health.get(indexerUrl);
     }
 
     public boolean sendHealthCheckRequest(String indexerUrl) throws IOException {
-        boolean retVal = false;
-        String url = indexerUrl + healthCheckEndpoint;
-        final HttpGet httpGet = new HttpGet(url);
+        return sendHealthCheckRequest(healthCheckRequest(indexerUrl));
+    }
+
+    private HttpGet healthCheckRequest(String indexerUrl) {
+        final HttpGet httpGet = new HttpGet(indexerUrl + healthCheckEndpoint);
         httpGet.setHeaders(headers);
+        httpGet.setConfig(healthCheckConfig);
+        return httpGet;
+    }
+
+    private boolean sendHealthCheckRequest(HttpGet httpGet) throws IOException {
+        boolean retVal = false;
+        String url = httpGet.getURI().toString();
         int status = -1;
-        CloseableHttpResponse resp = httpClient.execute(httpGet, context);
+        // a context per request, as the checks run concurrently
+        CloseableHttpResponse resp = httpClient.execute(httpGet, HttpClientContext.create());
         try {
             status = resp.getStatusLine().getStatusCode();
         } finally {
@@ -198,6 +417,8 @@ public final class LoadBalancer implements LoadBalancerInf {
 
         stopped = true;
         scheduledExecutorService.shutdown();
+        healthCheckExecutor.shutdownNow();
+        health.values().forEach(IndexerHealth::unregister);
         log.info("LoadBalancer stopped");
     }
 }
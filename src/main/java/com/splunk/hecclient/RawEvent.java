@@ -15,7 +15,11 @@
  */
 package com.splunk.hecclient;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -38,7 +42,8 @@ public final class RawEvent extends Event {
     /**
      * Checks to see if a byte representation of RawEvent has already been calculated. If so this value is returned.
      * Next a serious of type comparison checks to determinate the format type of data that was used to create the raw
-     * event. If its a String, convert to bytes. if its already of a byte array type, return a byte array. Finally if
+     * event. If its a String, convert to bytes. if its already of a byte array type, return a byte array. A ByteBuffer
+     * backed by a whole byte array returns that array, other ByteBuffers are copied. Finally if
      * we slip to the final conditional we assume the data is in json format. the json event is then converted to bytes.
      *
      * @return  Serialized byte array representation of RawEvent including all variables in superclass Event. Will return the
@@ -60,6 +65,8 @@ public final class RawEvent extends Event {
             bytes = s.getBytes(StandardCharsets.UTF_8);
         } else if (event instanceof byte[]) {
             bytes = (byte[]) event;
+        } else if (event instanceof ByteBuffer) {
+            bytes = toBytes((ByteBuffer) event);
         } else {
             // JSON object
             try {
@@ -72,6 +79,35 @@ public final class RawEvent extends Event {
         return bytes;
     }
 
+    @Override
+    protected void serialize(JsonGenerator gen) throws IOException {
+        if (event instanceof String) {
+            gen.writeRaw((String) event);
+        } else if (event instanceof byte[]) {
+            writeRaw(gen, (byte[]) event);
+        } else if (event instanceof ByteBuffer && ((ByteBuffer) event).hasArray()) {
+            ByteBuffer buf = (ByteBuffer) event;
+            writeRaw(gen, buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        } else if (event instanceof ByteBuffer) {
+            writeRaw(gen, toBytes((ByteBuffer) event));
+        } else {
+            // JSON object
+            streamWriter.writeValue(gen, event);
+        }
+    }
+
+    // a heap buffer spanning its whole backing array is used as is, the remaining bytes are copied otherwise.
+    // The position of the buffer is left untouched.
+    private static byte[] toBytes(ByteBuffer buf) {
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0 && buf.remaining() == buf.array().length) {
+            return buf.array();
+        }
+
+        byte[] data = new byte[buf.remaining()];
+        buf.duplicate().get(data);
+        return data;
+    }
+
     /**
      * Sets the value of the line breaker. The line breaker is used to add a separator value that is streamed along
      * with the event into Splunk. This line breaker value can then be used in conjunction with the Splunk configurable
@@ -85,6 +121,7 @@ public final class RawEvent extends Event {
     public final Event setLineBreaker(final String breaker) {
         if (breaker != null) {
             this.lineBreaker = breaker;
+            this.lineBreakerBytes = encodeLineBreaker(breaker);
         }
         return this;
     }
@@ -103,7 +103,9 @@ public final class RawEventBatch extends EventBatch {
     public void add(Event event) throws HecException {
         if (event instanceof RawEvent) {
             events.add(event);
-            len += event.length();
+            if (!isEnableStreaming()) {
+                len += event.length();
+            }
         } else {
             throw new HecException("only RawEvent can be add to RawEventBatch");
         }
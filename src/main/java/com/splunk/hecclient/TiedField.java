@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * TiedField is an event field whose value is read from the object the event is tied to, such as the Kafka record of
+ * the event, when the event is serialized. Events created from a JsonEventTemplate with tied fields do not hold the
+ * values of these fields, neither in a map nor as Strings.
+ * Implementations must be multi-thread safe.
+ *
+ * @see     JsonEventTemplate
+ * @since   2.2.3
+ */
+public abstract class TiedField {
+    private static final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[20]);
+
+    private final String name;
+
+    protected TiedField(final String name) {
+        this.name = name;
+    }
+
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * @param tied  Object the event is tied to.
+     * @return      Value of the field for the event.
+     */
+    public abstract String value(Object tied);
+
+    /**
+     * Writes the value of the field for the event as a json string. Implementations can override it to write the
+     * value without building a String.
+     *
+     * @param gen   Generator the event is written to.
+     * @param tied  Object the event is tied to.
+     */
+    public void writeValue(final JsonGenerator gen, final Object tied) throws IOException {
+        gen.writeString(value(tied));
+    }
+
+    public static TiedField of(final String name, final Function<Object, String> value) {
+        return new TiedField(name) {
+            @Override
+            public String value(final Object tied) {
+                return value.apply(tied);
+            }
+        };
+    }
+
+    // a field holding a number, which is written as a json string
+    public static TiedField ofLong(final String name, final ToLongFunction<Object> value) {
+        return new TiedField(name) {
+            @Override
+            public String value(final Object tied) {
+                return Long.toString(value.applyAsLong(tied));
+            }
+
+            @Override
+            public void writeValue(final JsonGenerator gen, final Object tied) throws IOException {
+                writeLongString(gen, value.applyAsLong(tied));
+            }
+        };
+    }
+
+    // writes the decimal digits of value as a json string
+    static void writeLongString(final JsonGenerator gen, final long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            gen.writeString(Long.toString(value));
+            return;
+        }
+
+        char[] buf = buffers.get();
+        int pos = buf.length;
+        long abs = Math.abs(value);
+        do {
+            buf[--pos] = (char) ('0' + abs % 10);
+            abs /= 10;
+        } while (abs != 0);
+        if (value < 0) {
+            buf[--pos] = '-';
+        }
+        gen.writeString(buf, pos, buf.length - pos);
+    }
+}
@@ -16,15 +16,27 @@
 package com.splunk.kafka.connect;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.kafka.connect.data.Decimal;
 import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
 
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 public class JacksonStructModule extends SimpleModule {
@@ -34,14 +46,285 @@ public class JacksonStructModule extends SimpleModule {
     addSerializer(Struct.class, new StructSerializer());
   }
 
+  /**
+   * StructSerializer writes the fields of a Struct straight to the generator. The writers of the fields are compiled
+   * once per Schema instance, converters hand out the same Schema instance for all the records of a schema version,
+   * and are cached. The output is the same as serializing a map of the field names to the field values.
+   */
   static class StructSerializer extends JsonSerializer<Struct> {
+    // schemas are looked up by identity, the cache is dropped when it grows past this size
+    static final int MAX_CACHED_SCHEMAS = 1000;
+
+    private final ConcurrentMap<SchemaKey, StructWriter> writers = new ConcurrentHashMap<>();
+    private volatile StructWriter lastWriter;
+
     @Override
     public void serialize(Struct struct, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
-      final Map<String, Object> result = new LinkedHashMap<>(struct.schema().fields().size());
-      for (Field field : struct.schema().fields()) {
-        result.put(field.name(), struct.get(field));
+      writerFor(struct.schema()).write(struct, jsonGenerator, serializerProvider);
+    }
+
+    StructWriter writerFor(final Schema schema) {
+      StructWriter writer = lastWriter;
+      if (writer != null && writer.schema == schema) {
+        return writer;
+      }
+
+      SchemaKey key = new SchemaKey(schema);
+      writer = writers.get(key);
+      if (writer == null) {
+        if (writers.size() >= MAX_CACHED_SCHEMAS) {
+          writers.clear();
+        }
+        writer = new StructWriter(schema);
+        writers.put(key, writer);
       }
-      jsonGenerator.writeObject(result);
+      lastWriter = writer;
+      return writer;
+    }
+
+    int cachedSchemas() {
+      return writers.size();
+    }
+  }
+
+  private interface ValueWriter {
+    void write(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException;
+  }
+
+  private static final ValueWriter GENERIC = (value, gen, provider) -> provider.defaultSerializeValue(value, gen);
+
+  private static final ValueWriter STRING = (value, gen, provider) -> {
+    if (value instanceof String) {
+      gen.writeString((String) value);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter INT = (value, gen, provider) -> {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      gen.writeNumber(((Number) value).intValue());
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter LONG = (value, gen, provider) -> {
+    if (value instanceof Long) {
+      gen.writeNumber((Long) value);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter FLOAT = (value, gen, provider) -> {
+    if (value instanceof Float) {
+      gen.writeNumber((Float) value);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter DOUBLE = (value, gen, provider) -> {
+    if (value instanceof Double) {
+      gen.writeNumber((Double) value);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter BOOLEAN = (value, gen, provider) -> {
+    if (value instanceof Boolean) {
+      gen.writeBoolean((Boolean) value);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter BYTES = (value, gen, provider) -> {
+    if (value instanceof byte[]) {
+      byte[] bytes = (byte[]) value;
+      gen.writeBinary(provider.getConfig().getBase64Variant(), bytes, 0, bytes.length);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static final ValueWriter DECIMAL = (value, gen, provider) -> {
+    if (value instanceof BigDecimal) {
+      gen.writeNumber((BigDecimal) value);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  // Connect Date, Time and Timestamp, written with the date format of the mapper
+  private static final ValueWriter DATE = (value, gen, provider) -> {
+    if (value instanceof Date) {
+      provider.defaultSerializeDateValue((Date) value, gen);
+    } else {
+      GENERIC.write(value, gen, provider);
+    }
+  };
+
+  private static ValueWriter writerFor(final Schema schema) {
+    if (schema == null) {
+      return GENERIC;
+    }
+
+    String name = schema.name();
+    if (name != null) {
+      switch (name) {
+        case Decimal.LOGICAL_NAME:
+          return DECIMAL;
+        case org.apache.kafka.connect.data.Date.LOGICAL_NAME:
+        case Time.LOGICAL_NAME:
+        case Timestamp.LOGICAL_NAME:
+          return DATE;
+        default:
+          break;
+      }
+    }
+
+    switch (schema.type()) {
+      case INT8:
+      case INT16:
+      case INT32:
+        return INT;
+      case INT64:
+        return LONG;
+      case FLOAT32:
+        return FLOAT;
+      case FLOAT64:
+        return DOUBLE;
+      case BOOLEAN:
+        return BOOLEAN;
+      case STRING:
+        return STRING;
+      case BYTES:
+        return BYTES;
+      case ARRAY:
+        return new ArrayWriter(writerFor(schema.valueSchema()));
+      case MAP:
+        if (schema.keySchema() != null && schema.keySchema().type() == Schema.Type.STRING
+                && schema.keySchema().name() == null) {
+          return new MapWriter(writerFor(schema.valueSchema()));
+        }
+        return GENERIC;
+      case STRUCT:
+        return new StructWriter(schema);
+      default:
+        return GENERIC;
+    }
+  }
+
+  private static void writeValue(final ValueWriter writer, final Object value, final JsonGenerator gen,
+                                 final SerializerProvider provider) throws IOException {
+    if (value == null) {
+      gen.writeNull();
+    } else {
+      writer.write(value, gen, provider);
+    }
+  }
+
+  static final class StructWriter implements ValueWriter {
+    private final Schema schema;
+    private final Field[] fields;
+    private final SerializableString[] names;
+    private final ValueWriter[] writers;
+
+    StructWriter(final Schema schema) {
+      this.schema = schema;
+      List<Field> schemaFields = schema.fields();
+      this.fields = schemaFields.toArray(new Field[0]);
+      this.names = new SerializableString[fields.length];
+      this.writers = new ValueWriter[fields.length];
+      for (int i = 0; i < fields.length; i++) {
+        names[i] = new SerializedString(fields[i].name());
+        writers[i] = writerFor(fields[i].schema());
+      }
+    }
+
+    @Override
+    public void write(final Object value, final JsonGenerator gen, final SerializerProvider provider) throws IOException {
+      if (!(value instanceof Struct)) {
+        GENERIC.write(value, gen, provider);
+        return;
+      }
+
+      Struct struct = (Struct) value;
+      gen.writeStartObject();
+      for (int i = 0; i < fields.length; i++) {
+        gen.writeFieldName(names[i]);
+        writeValue(writers[i], struct.get(fields[i]), gen, provider);
+      }
+      gen.writeEndObject();
+    }
+  }
+
+  private static final class ArrayWriter implements ValueWriter {
+    private final ValueWriter elementWriter;
+
+    ArrayWriter(final ValueWriter elementWriter) {
+      this.elementWriter = elementWriter;
+    }
+
+    @Override
+    public void write(final Object value, final JsonGenerator gen, final SerializerProvider provider) throws IOException {
+      if (!(value instanceof Collection)) {
+        GENERIC.write(value, gen, provider);
+        return;
+      }
+
+      gen.writeStartArray();
+      for (Object element : (Collection<?>) value) {
+        writeValue(elementWriter, element, gen, provider);
+      }
+      gen.writeEndArray();
+    }
+  }
+
+  private static final class MapWriter implements ValueWriter {
+    private final ValueWriter valueWriter;
+
+    MapWriter(final ValueWriter valueWriter) {
+      this.valueWriter = valueWriter;
+    }
+
+    @Override
+    public void write(final Object value, final JsonGenerator gen, final SerializerProvider provider) throws IOException {
+      if (!(value instanceof Map)) {
+        GENERIC.write(value, gen, provider);
+        return;
+      }
+
+      gen.writeStartObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (!(entry.getKey() instanceof String)) {
+          throw JsonMappingException.from(gen, "Map key is not a string: " + entry.getKey());
+        }
+        gen.writeFieldName((String) entry.getKey());
+        writeValue(valueWriter, entry.getValue(), gen, provider);
+      }
+      gen.writeEndObject();
+    }
+  }
+
+  private static final class SchemaKey {
+    private final Schema schema;
+
+    SchemaKey(final Schema schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof SchemaKey && ((SchemaKey) obj).schema == schema;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(schema);
     }
   }
 }
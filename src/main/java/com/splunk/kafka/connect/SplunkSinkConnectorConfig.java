@@ -15,7 +15,11 @@
  */
 package com.splunk.kafka.connect;
 
+import com.splunk.hecclient.ChannelSelectors;
+import com.splunk.hecclient.CompressionCodec;
+import com.splunk.hecclient.CompressionCodecs;
 import com.splunk.hecclient.HecConfig;
+import com.splunk.hecclient.HecException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
@@ -24,6 +28,7 @@ import org.apache.kafka.connect.sink.SinkConnector;
 import org.apache.kafka.connect.sink.SinkTask;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +60,12 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     static final String SOCKET_TIMEOUT_CONF = "splunk.hec.socket.timeout"; // seconds
     static final String SSL_VALIDATE_CERTIFICATES_CONF = "splunk.hec.ssl.validate.certs";
     static final String ENABLE_COMPRESSSION_CONF = "splunk.hec.enable.compression";
+    static final String ENABLE_STREAMING_CONF = "splunk.hec.enable.streaming";
+    static final String COMPRESSION_CODEC_CONF = "splunk.hec.compression.codec";
+    static final String ENABLE_ASYNC_SEND_CONF = "splunk.hec.enable.async.send";
+    static final String ASYNC_SEND_THREADS_CONF = "splunk.hec.async.send.threads";
+    static final String ENABLE_RATE_CONTROL_CONF = "splunk.hec.enable.rate.control";
+    static final String COMPRESSION_LEVEL_CONF = "splunk.hec.compression.level";
     // only applicable when "splunk.hec.threads" > 1
     static final String QUEUE_CAPACITY_CONF = "splunk.hec.concurrent.queue.capacity";
 
@@ -76,6 +87,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     static final String ENRICHMENT_CONF = "splunk.hec.json.event.enrichment";
     static final String TRACK_DATA_CONF = "splunk.hec.track.data";
     static final String HEC_EVENT_FORMATTED_CONF = "splunk.hec.json.event.formatted";
+    static final String HEC_EVENT_FORMATTED_PASSTHROUGH_CONF = "splunk.hec.json.event.formatted.passthrough";
     // Trust store
     static final String SSL_TRUSTSTORE_PATH_CONF = "splunk.hec.ssl.trust.store.path";
     static final String SSL_TRUSTSTORE_TYPE_CONF = "splunk.hec.ssl.trust.store.type";
@@ -91,6 +103,11 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     static final String HEADER_HOST_CONF = "splunk.header.host";
     // Load Balancer
     static final String LB_POLL_INTERVAL_CONF = "splunk.hec.lb.poll.interval";
+    static final String LB_HEALTH_CHECK_TIMEOUT_CONF = "splunk.hec.lb.health.check.timeout"; // seconds
+    static final String LB_POLICY_CONF = "splunk.hec.lb.policy";
+    static final String CIRCUIT_BREAKER_FAILURES_CONF = "splunk.hec.circuit.breaker.failures";
+    static final String CIRCUIT_BREAKER_ERROR_RATE_CONF = "splunk.hec.circuit.breaker.error.rate";
+    static final String CIRCUIT_BREAKER_OPEN_SECONDS_CONF = "splunk.hec.circuit.breaker.open.seconds";
 
      // Kerberos config
      static final String KERBEROS_USER_PRINCIPAL_CONF = "kerberos.user.principal";
@@ -99,6 +116,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
      // Input the Regex String and timestamp format
      static final String ENABLE_TIMESTAMP_EXTRACTION_CONF = "enable.timestamp.extraction";
      static final String REGEX_CONF = "timestamp.regex";
+     static final String TIMESTAMP_FIELD_PATH_CONF = "timestamp.field.path";
      static final String TIMESTAMP_FORMAT_CONF = "timestamp.format";
      static final String TIMESTAMP_TIMEZONE_CONF = "timestamp.timezone";
 
@@ -135,6 +153,28 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     static final String SSL_VALIDATE_CERTIFICATES_DOC = "Valid settings are true or false. Enables or disables HTTPS "
             + "certification validation. By default, this is set to true.";
     static final String ENABLE_COMPRESSSION_DOC = "Valid settings are true or false. Used for enable or disable gzip-compression. By default, this is set to false.";
+    static final String ENABLE_STREAMING_DOC = "Valid settings are true or false. When set to true, events are serialized "
+            + "straight into the HTTP request body using chunked transfer encoding instead of being cached as bytes per "
+            + "event. By default, this is set to false.";
+    static final String COMPRESSION_CODEC_DOC = "Codec used to compress the HTTP request body when "
+            + ENABLE_COMPRESSSION_CONF + " is set to true. Besides the built-in gzip, codecs can be plugged in through "
+            + "the com.splunk.hecclient.CompressionCodec service loader. By default, this is set to gzip.";
+    static final String COMPRESSION_LEVEL_DOC = "Compression level passed to the codec. For gzip, valid settings are 0 "
+            + "(no compression) to 9 (best compression), or -1 for the default level. Lower levels use less CPU at the "
+            + "cost of a bigger payload. By default, this is set to -1.";
+    static final String ENABLE_ASYNC_SEND_DOC = "Valid settings are true or false. When set to true, batches are posted "
+            + "without blocking the sending thread and each channel keeps up to " + MAX_HTTP_CONNECTION_PER_CHANNEL_CONF
+            + " requests in flight. By default, this is set to false.";
+    static final String ASYNC_SEND_THREADS_DOC = "Max number of threads of a task which post the batches when "
+            + ENABLE_ASYNC_SEND_CONF + " is set to true. There is a thread per request in flight up to this number, "
+            + "the requests over it wait for a thread. By default, this is set to 32.";
+    static final String ENABLE_RATE_CONTROL_DOC = "Valid settings are true or false. When set to true, every indexer "
+            + "gets limits on the requests in flight, up to " + MAX_HTTP_CONNECTION_PER_CHANNEL_CONF + " for each of its "
+            + "channels, and on the bytes posted per second. The limits are shared by the channels of the indexer. "
+            + "The limits are halved when the indexer answers 503 or a request fails or times out, and grow back on "
+            + "fast successful requests, instead of taking the indexer out of rotation for "
+            + HEC_BACKOFF_PRESSURE_THRESHOLD + ". Batches wait for an indexer under its limits, and fail at once after "
+            + "a batch waited in vain, until a request finishes. By default, this is set to false.";
     static final String DISABLE_VALIDATION_DOC = "Disable validating splunk configurations before creating task.";
     // Acknowledgement Parameters
     // Use Ack
@@ -185,6 +225,11 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     static final String HEC_EVENT_FORMATTED_DOC = "Ensures events that are pre-formatted into the properly formatted HEC "
             + "JSON format as per http://dev.splunk.com/view/event-collector/SP-CAAAE6P have meta-data and event data indexed "
             + "correctly by Splunk.";
+    static final String HEC_EVENT_FORMATTED_PASSTHROUGH_DOC = "When set to `true` together with "
+            + "`splunk.hec.json.event.formatted`, only the envelope of pre-formatted events is validated. Enrichment "
+            + "and tracking fields are spliced into the original bytes which are then forwarded as they are. Events "
+            + "which fail validation, and all events when `splunk.header.support` is enabled, are deserialized as "
+            + "before. By default, this setting is set to `false`.";
     // TBD
     static final String SSL_TRUSTSTORE_PATH_DOC = "Path on the local disk to the certificate trust store.";
     static final String SSL_TRUSTSTORE_TYPE_DOC = "Type of the trust store (JKS, PKCS12, ...).";
@@ -203,12 +248,31 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     // Load Balancer
     static final String LB_POLL_INTERVAL_DOC = "This setting controls the load balancer polling interval. By default, "
             + "this setting is 120 seconds.";
+    static final String LB_HEALTH_CHECK_TIMEOUT_DOC = "Max duration in seconds of the health check of an indexer, "
+            + "connecting included. The indexers are checked concurrently, and an indexer which has not answered by "
+            + "then is removed from the load balancer. It does not depend on splunk.hec.socket.timeout. By default, "
+            + "this setting is 5 seconds.";
+    static final String LB_POLICY_DOC = "Policy used to pick the channel each batch is sent to. Valid settings are "
+            + "round_robin, weighted, which favors the indexers answering faster, least_outstanding, which favors "
+            + "the channels with the fewest bytes in flight, and power_of_two_choices, which sends each batch to the "
+            + "better of two random channels given the recent latency of their POSTs and acks. By default, this is set "
+            + "to round_robin.";
+    static final String CIRCUIT_BREAKER_FAILURES_DOC = "Number of consecutive failed requests after which the circuit "
+            + "breaker of an indexer opens and batches are no longer sent to it. By default, this is set to 0, which "
+            + "disables the check.";
+    static final String CIRCUIT_BREAKER_ERROR_RATE_DOC = "Percentage of failed requests among the last 20 requests to an "
+            + "indexer at which its circuit breaker opens. By default, this is set to 0, which disables the check.";
+    static final String CIRCUIT_BREAKER_OPEN_SECONDS_DOC = "Duration in seconds a circuit breaker stays open before a "
+            + "single probe batch is sent to the indexer. The breaker closes if the probe succeeds and opens again if "
+            + "it fails. By default, this is set to 30 seconds.";
     
     static final String KERBEROS_USER_PRINCIPAL_DOC = "Kerberos user principal";
     static final String KERBEROS_KEYTAB_LOCATION_DOC = "Kerberos keytab path";
 
     static final String ENABLE_TIMESTAMP_EXTRACTION_DOC = "Set to true if you want to extract the timestamp";
     static final String REGEX_DOC = "Regex";
+    static final String TIMESTAMP_FIELD_PATH_DOC = "Path of the timestamp field in JSON, Struct or Map events, such as "
+            + "`$.meta.ts`. When set, it is used instead of the regex and only the fields on the path are parsed.";
     static final String TIMESTAMP_FORMAT_DOC = "Timestamp format";
     static final String TIMESTAMP_TIMEZONE_DOC = "Timestamp timezone";
 
@@ -229,8 +293,19 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     final int socketTimeout;
     final boolean validateCertificates;
     final boolean enableCompression;
+    final boolean enableStreaming;
+    final String compressionCodec;
+    final int compressionLevel;
+    final boolean enableAsyncSend;
+    final int asyncSendThreads;
+    final boolean enableRateControl;
     final boolean disableValidation;
     final int lbPollInterval;
+    final int lbHealthCheckTimeout;
+    final String lbPolicy;
+    final int circuitBreakerFailures;
+    final int circuitBreakerErrorRate;
+    final int circuitBreakerOpenSeconds;
 
     final boolean ack;
     final int ackPollInterval;
@@ -242,6 +317,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
 
     final boolean raw;
     final boolean hecEventFormatted;
+    final boolean hecEventFormattedPassthrough;
 
     final String lineBreaker;
     final boolean useRecordTimestamp;
@@ -265,6 +341,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
 
     final boolean enableTimestampExtraction;
     final String regex;
+    final String timestampFieldPath;
     final String timestampFormat;
     final int queueCapacity;
     final String timeZone;
@@ -291,6 +368,14 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
         ackPollThreads = getInt(ACK_POLL_THREADS_CONF);
         maxHttpConnPerChannel = getInt(MAX_HTTP_CONNECTION_PER_CHANNEL_CONF);
         lbPollInterval = getInt(LB_POLL_INTERVAL_CONF);
+        lbHealthCheckTimeout = getInt(LB_HEALTH_CHECK_TIMEOUT_CONF);
+        validateHealthCheckTimeout(lbHealthCheckTimeout);
+        lbPolicy = getString(LB_POLICY_CONF);
+        validateLbPolicy(lbPolicy);
+        circuitBreakerFailures = getInt(CIRCUIT_BREAKER_FAILURES_CONF);
+        circuitBreakerErrorRate = getInt(CIRCUIT_BREAKER_ERROR_RATE_CONF);
+        circuitBreakerOpenSeconds = getInt(CIRCUIT_BREAKER_OPEN_SECONDS_CONF);
+        validateCircuitBreaker(circuitBreakerFailures, circuitBreakerErrorRate, circuitBreakerOpenSeconds);
         flushWindow = getInt(FLUSH_WINDOW_CONF);
         totalHecChannels = getInt(TOTAL_HEC_CHANNEL_CONF);
         socketTimeout = getInt(SOCKET_TIMEOUT_CONF);
@@ -308,6 +393,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
         maxRetries = getInt(MAX_RETRIES_CONF);
         backoffThresholdSeconds = getInt(HEC_BACKOFF_PRESSURE_THRESHOLD);
         hecEventFormatted = getBoolean(HEC_EVENT_FORMATTED_CONF);
+        hecEventFormattedPassthrough = getBoolean(HEC_EVENT_FORMATTED_PASSTHROUGH_CONF);
         validateTopicsAndTopicsRegexCombination(taskConfig);
         topicMetas = initMetaMap(taskConfig);
         headerSupport = getBoolean(HEADER_SUPPORT_CONF);
@@ -319,9 +405,18 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
         kerberosUserPrincipal = getString(KERBEROS_USER_PRINCIPAL_CONF);
         kerberosKeytabPath = getString(KERBEROS_KEYTAB_PATH_CONF);
         enableCompression = getBoolean(ENABLE_COMPRESSSION_CONF);
+        enableStreaming = getBoolean(ENABLE_STREAMING_CONF);
+        compressionCodec = getString(COMPRESSION_CODEC_CONF);
+        compressionLevel = getInt(COMPRESSION_LEVEL_CONF);
+        validateCompression(compressionCodec, compressionLevel);
+        enableAsyncSend = getBoolean(ENABLE_ASYNC_SEND_CONF);
+        asyncSendThreads = getInt(ASYNC_SEND_THREADS_CONF);
+        validateAsyncSendThreads(asyncSendThreads);
+        enableRateControl = getBoolean(ENABLE_RATE_CONTROL_CONF);
         disableValidation = getBoolean(DISABLE_VALIDATION);
         enableTimestampExtraction = getBoolean(ENABLE_TIMESTAMP_EXTRACTION_CONF);
         regex = getString(REGEX_CONF);
+        timestampFieldPath = getString(TIMESTAMP_FIELD_PATH_CONF).trim();
         timestampFormat = getString(TIMESTAMP_FORMAT_CONF).trim();
         timeZone = getString(TIMESTAMP_TIMEZONE_CONF);
         validateRegexForTimestamp(regex);
@@ -362,6 +457,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
                 .define(MAX_RETRIES_CONF, ConfigDef.Type.INT, -1, ConfigDef.Importance.MEDIUM, MAX_RETRIES_DOC)
                 .define(HEC_BACKOFF_PRESSURE_THRESHOLD, ConfigDef.Type.INT, 60, ConfigDef.Importance.MEDIUM, HEC_BACKOFF_PRESSURE_THRESHOLD_DOC)
                 .define(HEC_EVENT_FORMATTED_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.LOW, HEC_EVENT_FORMATTED_DOC)
+                .define(HEC_EVENT_FORMATTED_PASSTHROUGH_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.LOW, HEC_EVENT_FORMATTED_PASSTHROUGH_DOC)
                 .define(MAX_BATCH_SIZE_CONF, ConfigDef.Type.INT, 500, ConfigDef.Importance.MEDIUM, MAX_BATCH_SIZE_DOC)
                 .define(HEADER_SUPPORT_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.MEDIUM, HEADER_SUPPORT_DOC)
                 .define(HEADER_CUSTOM_CONF, ConfigDef.Type.STRING, "", ConfigDef.Importance.MEDIUM, HEADER_CUSTOM_DOC)
@@ -370,12 +466,24 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
                 .define(HEADER_SOURCETYPE_CONF, ConfigDef.Type.STRING, HEADER_SOURCETYPE_CONF, ConfigDef.Importance.MEDIUM, HEADER_SOURCETYPE_DOC)
                 .define(HEADER_HOST_CONF, ConfigDef.Type.STRING, HEADER_HOST_CONF, ConfigDef.Importance.MEDIUM, HEADER_HOST_DOC)
                 .define(LB_POLL_INTERVAL_CONF, ConfigDef.Type.INT, 120, ConfigDef.Importance.LOW, LB_POLL_INTERVAL_DOC)
+                .define(LB_HEALTH_CHECK_TIMEOUT_CONF, ConfigDef.Type.INT, 5, ConfigDef.Importance.LOW, LB_HEALTH_CHECK_TIMEOUT_DOC)
+                .define(LB_POLICY_CONF, ConfigDef.Type.STRING, ChannelSelectors.ROUND_ROBIN, ConfigDef.Importance.LOW, LB_POLICY_DOC)
+                .define(CIRCUIT_BREAKER_FAILURES_CONF, ConfigDef.Type.INT, 0, ConfigDef.Importance.LOW, CIRCUIT_BREAKER_FAILURES_DOC)
+                .define(CIRCUIT_BREAKER_ERROR_RATE_CONF, ConfigDef.Type.INT, 0, ConfigDef.Importance.LOW, CIRCUIT_BREAKER_ERROR_RATE_DOC)
+                .define(CIRCUIT_BREAKER_OPEN_SECONDS_CONF, ConfigDef.Type.INT, 30, ConfigDef.Importance.LOW, CIRCUIT_BREAKER_OPEN_SECONDS_DOC)
                 .define(ENABLE_COMPRESSSION_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.MEDIUM, ENABLE_COMPRESSSION_DOC)
+                .define(ENABLE_STREAMING_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.LOW, ENABLE_STREAMING_DOC)
+                .define(COMPRESSION_CODEC_CONF, ConfigDef.Type.STRING, CompressionCodecs.GZIP, ConfigDef.Importance.LOW, COMPRESSION_CODEC_DOC)
+                .define(ENABLE_ASYNC_SEND_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.LOW, ENABLE_ASYNC_SEND_DOC)
+                .define(ASYNC_SEND_THREADS_CONF, ConfigDef.Type.INT, 32, ConfigDef.Importance.LOW, ASYNC_SEND_THREADS_DOC)
+                .define(ENABLE_RATE_CONTROL_CONF, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.LOW, ENABLE_RATE_CONTROL_DOC)
+                .define(COMPRESSION_LEVEL_CONF, ConfigDef.Type.INT, CompressionCodecs.DEFAULT_LEVEL, ConfigDef.Importance.LOW, COMPRESSION_LEVEL_DOC)
                 .define(DISABLE_VALIDATION, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.MEDIUM, DISABLE_VALIDATION_DOC)
                 .define(KERBEROS_USER_PRINCIPAL_CONF, ConfigDef.Type.STRING, "", ConfigDef.Importance.MEDIUM, KERBEROS_USER_PRINCIPAL_DOC)
                 .define(KERBEROS_KEYTAB_PATH_CONF, ConfigDef.Type.STRING, "", ConfigDef.Importance.MEDIUM, KERBEROS_KEYTAB_LOCATION_DOC)
                 .define(ENABLE_TIMESTAMP_EXTRACTION_CONF, ConfigDef.Type.BOOLEAN,  false , ConfigDef.Importance.MEDIUM, ENABLE_TIMESTAMP_EXTRACTION_DOC)
                 .define(REGEX_CONF, ConfigDef.Type.STRING,  "" , ConfigDef.Importance.MEDIUM, REGEX_DOC)
+                .define(TIMESTAMP_FIELD_PATH_CONF, ConfigDef.Type.STRING, "", ConfigDef.Importance.MEDIUM, TIMESTAMP_FIELD_PATH_DOC)
                 .define(TIMESTAMP_FORMAT_CONF, ConfigDef.Type.STRING, "", ConfigDef.Importance.MEDIUM, TIMESTAMP_FORMAT_DOC)
                 .define(TIMESTAMP_TIMEZONE_CONF, ConfigDef.Type.STRING, "", ConfigDef.Importance.MEDIUM, TIMESTAMP_TIMEZONE_DOC)
                 .define(QUEUE_CAPACITY_CONF, ConfigDef.Type.INT, 100, ConfigDef.Importance.LOW, QUEUE_CAPACITY_DOC);
@@ -394,6 +502,11 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
               .setHttpKeepAlive(httpKeepAlive)
               .setAckPollInterval(ackPollInterval)
               .setlbPollInterval(lbPollInterval)
+              .setHealthCheckTimeout(lbHealthCheckTimeout)
+              .setLbPolicy(lbPolicy)
+              .setCircuitBreakerFailures(circuitBreakerFailures)
+              .setCircuitBreakerErrorRate(circuitBreakerErrorRate)
+              .setCircuitBreakerOpenSeconds(circuitBreakerOpenSeconds)
               .setAckPollThreads(ackPollThreads)
               .setEnableChannelTracking(trackData)
               .setBackoffThresholdSeconds(backoffThresholdSeconds)
@@ -404,7 +517,12 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
               .setKerberosPrincipal(kerberosUserPrincipal)
               .setKerberosKeytabPath(kerberosKeytabPath)
               .setConcurrentHecQueueCapacity(queueCapacity)
-              .setAutoExtractTimestamp(autoExtractTimestamp);
+              .setAutoExtractTimestamp(autoExtractTimestamp)
+              .setCompressionCodec(compressionCodec)
+              .setCompressionLevel(compressionLevel)
+              .setEnableAsyncSend(enableAsyncSend)
+              .setAsyncSendThreads(asyncSendThreads)
+              .setEnableRateControl(enableRateControl);
         return config;
     }
 
@@ -442,6 +560,7 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
                 + "maxRetries:" + maxRetries + ", "
                 + "useRecordTimestamp:" + useRecordTimestamp + ", "
                 + "hecEventFormatted:" + hecEventFormatted + ", "
+                + "hecEventFormattedPassthrough:" + hecEventFormattedPassthrough + ", "
                 + "trackData:" + trackData + ", "
                 + "headerSupport:" + headerSupport + ", "
                 + "headerCustom:" + headerCustom + ", "
@@ -450,8 +569,19 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
                 + "headerSourcetype:" + headerSourcetype + ", "
                 + "headerHost:" + headerHost + ", "
                 + "enableCompression:" + enableCompression + ", "
+                + "enableStreaming:" + enableStreaming + ", "
+                + "compressionCodec:" + compressionCodec + ", "
+                + "compressionLevel:" + compressionLevel + ", "
+                + "enableAsyncSend:" + enableAsyncSend + ", "
+                + "asyncSendThreads:" + asyncSendThreads + ", "
+                + "enableRateControl:" + enableRateControl + ", "
                 + "disableValidation:" + disableValidation + ", "
-                + "lbPollInterval:" + lbPollInterval;
+                + "lbPollInterval:" + lbPollInterval + ", "
+                + "lbHealthCheckTimeout:" + lbHealthCheckTimeout + ", "
+                + "lbPolicy:" + lbPolicy + ", "
+                + "circuitBreakerFailures:" + circuitBreakerFailures + ", "
+                + "circuitBreakerErrorRate:" + circuitBreakerErrorRate + ", "
+                + "circuitBreakerOpenSeconds:" + circuitBreakerOpenSeconds;
     }
 
     private static String[] split(String data, String sep) {
@@ -475,7 +605,8 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
             }
             enrichmentKvs.put(kvPairs[0], kvPairs[1]);
         }
-        return enrichmentKvs;
+        // events share this map as their fields
+        return Collections.unmodifiableMap(enrichmentKvs);
     }
 
     private String getMetaForTopic(String[] metas, int expectedLength, int curIdx, String confKey) {
@@ -557,6 +688,14 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
     }
 
     private void validateRegexForTimestamp(String regex) {
+        if (enableTimestampExtraction && !timestampFieldPath.isEmpty()) {
+            try {
+                TimestampExtractor.parseFieldPath(timestampFieldPath);
+            } catch (IllegalArgumentException ex) {
+                throw new ConfigException("Invalid " + TIMESTAMP_FIELD_PATH_CONF + " configuration=" + timestampFieldPath);
+            }
+            return;
+        }
         if (enableTimestampExtraction && StringUtils.isBlank(regex)) {
             throw new ConfigException("regex can't be null or empty if enableTimestampExtraction is true");
         }
@@ -576,6 +715,48 @@ public final class SplunkSinkConnectorConfig extends AbstractConfig {
         }
     }
 
+    private void validateCompression(String codecName, int level) {
+        CompressionCodec codec;
+        try {
+            codec = CompressionCodecs.forName(codecName);
+        } catch (HecException ex) {
+            throw new ConfigException("Invalid " + COMPRESSION_CODEC_CONF + " configuration=" + codecName);
+        }
+        if (!codec.isValidLevel(level)) {
+            throw new ConfigException("Invalid " + COMPRESSION_LEVEL_CONF + " configuration=" + level + " for codec " + codec.getName());
+        }
+    }
+
+    private void validateAsyncSendThreads(int threads) {
+        if (threads <= 0) {
+            throw new ConfigException("Invalid " + ASYNC_SEND_THREADS_CONF + " configuration=" + threads);
+        }
+    }
+
+    private void validateHealthCheckTimeout(int timeout) {
+        if (timeout <= 0) {
+            throw new ConfigException("Invalid " + LB_HEALTH_CHECK_TIMEOUT_CONF + " configuration=" + timeout);
+        }
+    }
+
+    private void validateLbPolicy(String policy) {
+        if (!ChannelSelectors.isSupported(policy)) {
+            throw new ConfigException("Invalid " + LB_POLICY_CONF + " configuration=" + policy);
+        }
+    }
+
+    private void validateCircuitBreaker(int failures, int errorRate, int openSeconds) {
+        if (failures < 0) {
+            throw new ConfigException("Invalid " + CIRCUIT_BREAKER_FAILURES_CONF + " configuration=" + failures);
+        }
+        if (errorRate < 0 || errorRate > 100) {
+            throw new ConfigException("Invalid " + CIRCUIT_BREAKER_ERROR_RATE_CONF + " configuration=" + errorRate);
+        }
+        if (openSeconds <= 0) {
+            throw new ConfigException("Invalid " + CIRCUIT_BREAKER_OPEN_SECONDS_CONF + " configuration=" + openSeconds);
+        }
+    }
+
     private static boolean getNamedGroupCandidates(String regex) {
         Matcher m = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>").matcher(regex);
         while (m.find()) {
@@ -26,16 +26,15 @@ import org.apache.kafka.connect.header.Headers;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.apache.kafka.connect.sink.SinkTask;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.kafka.connect.header.Header;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,11 +43,23 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
     private static final Logger log = LoggerFactory.getLogger(SplunkSinkTask.class);
     private static long flushWindow = Long.valueOf(30) * 1000; // 30 seconds
     private static final String HEADERTOKEN = "$$$";
+    // ObjectReader is immutable and thread safe, share it so its deserializer cache stays warm across records
+    private static final ObjectReader jsonEventReader = new ObjectMapper().readerFor(JsonEvent.class);
+    static final int MAX_SHARED_HEADER_METAS = 1024;
 
     private HecInf hec;
     private KafkaRecordTracker tracker;
     private SplunkSinkConnectorConfig connectorConfig;
     private List<SinkRecord> bufferedRecords;
+    private TimestampExtractor timestampExtractor;
+    // least recently used values are evicted first, so a burst of new values doesn't drop the frequent ones
+    private final Map<String, String> headerMetas = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_SHARED_HEADER_METAS;
+        }
+    };
+    private final Map<String, JsonEventTemplate> topicTemplates = new HashMap<>();
     private long lastFlushed = System.currentTimeMillis();
     private long threadId = Thread.currentThread().getId();
 
@@ -62,6 +73,10 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
         HOSTNAME = h;
     }
 
+    // read from the record when an event is serialized, events of a topic template hold no map for them
+    private static final TiedField[] TRACK_FIELDS = createTrackFields();
+    private static final TiedField[] NO_TRACK_FIELDS = {};
+
     @Override
     public void start(Map<String, String> taskConfig) {
         connectorConfig = new SplunkSinkConnectorConfig(taskConfig);
@@ -70,6 +85,11 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
         }
         tracker = new KafkaRecordTracker();
         bufferedRecords = new ArrayList<>();
+        topicTemplates.clear();
+        if (connectorConfig.enableTimestampExtraction) {
+            timestampExtractor = new TimestampExtractor(connectorConfig.regex, connectorConfig.timestampFieldPath,
+                    connectorConfig.timestampFormat, connectorConfig.timeZone);
+        }
         if(connectorConfig.flushWindow > 0) {
             flushWindow = connectorConfig.flushWindow * Long.valueOf(1000); // Flush window set to user configured value (Multiply by 1000 as all the calculations are done in milliseconds)
         }
@@ -174,11 +194,13 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
             for (Map.Entry<TopicPartition, Collection<SinkRecord>> entry: partitionedRecords.entrySet()) {
                 EventBatch batch = createRawEventBatch(entry.getKey());
                 batch.setEnableCompression(connectorConfig.enableCompression);
+                batch.setEnableStreaming(connectorConfig.enableStreaming);
                 sendEvents(entry.getValue(), batch);
             }
         } else {
             EventBatch batch = createRawEventBatch(null);
             batch.setEnableCompression(connectorConfig.enableCompression);
+            batch.setEnableStreaming(connectorConfig.enableStreaming);
             sendEvents(records, batch);
         }
     }
@@ -204,6 +226,7 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
 
             EventBatch batch = createRawHeaderEventBatch(splunkSinkRecordKey);
             batch.setEnableCompression(connectorConfig.enableCompression);
+            batch.setEnableStreaming(connectorConfig.enableStreaming);
             sendEvents(recordArrayList, batch);
         }
         log.debug("{} records have been bucketed in to {} batches", records.size(), recordsWithSameHeaders.size());
@@ -264,6 +287,7 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
     private void handleEvent(final Collection<SinkRecord> records) {
         EventBatch batch = new JsonEventBatch();
         batch.setEnableCompression(connectorConfig.enableCompression);
+        batch.setEnableStreaming(connectorConfig.enableStreaming);
         sendEvents(records, batch);
     }
 
@@ -288,6 +312,7 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
                 // start a new batch after send
                 batch = batch.createFromThis();
                 batch.setEnableCompression(connectorConfig.enableCompression);
+                batch.setEnableStreaming(connectorConfig.enableStreaming);
             }
         }
 
@@ -341,6 +366,11 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
     @Override
     public void open(Collection<TopicPartition> partitions) {
         tracker.open(partitions);
+        if (!connectorConfig.raw) {
+            for (TopicPartition partition: partitions) {
+                topicTemplate(partition.topic());
+            }
+        }
     }
 
     @Override
@@ -395,19 +425,28 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
             return event;
         }
 
-        JsonEvent event;
-        ObjectMapper objectMapper = new ObjectMapper();
-
+        JsonEvent event = null;
         if(connectorConfig.hecEventFormatted) {
+            if (connectorConfig.hecEventFormattedPassthrough && !connectorConfig.headerSupport) {
+                event = createPassthroughEvent(record);
+                if (event != null) {
+                    return event;
+                }
+            }
+
             try {
-                event = objectMapper.readValue(record.value().toString(), JsonEvent.class);
+                event = readFormattedEvent(record.value());
                 event.setTied(record);
                 event.addFields(connectorConfig.enrichments);
             } catch(Exception e) {
                 log.error("event does not follow correct HEC pre-formatted format: {}", record.value().toString());
-                event = createHECEventNonFormatted(record);
+                event = null;
             }
-        } else {
+        }
+
+        // non formatted events get the tracking fields from the topic template
+        boolean formatted = event != null;
+        if (!formatted) {
             event = createHECEventNonFormatted(record);
         }
 
@@ -415,22 +454,86 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
             addHeaders(event, record);
         }
 
-        if (connectorConfig.trackData) {
-            Map<String, String> trackMetas = new HashMap<>();
-            trackMetas.put("kafka_offset", String.valueOf(record.kafkaOffset()));
-            trackMetas.put("kafka_timestamp", String.valueOf(record.timestamp()));
-            trackMetas.put("kafka_topic", record.topic());
-            trackMetas.put("kafka_partition", String.valueOf(record.kafkaPartition()));
-            trackMetas.put("kafka_record_key", String.valueOf(record.key()));
-            if (HOSTNAME != null)
-                trackMetas.put("kafka_connect_host", HOSTNAME);
-            event.addFields(trackMetas);
-        }
-        event.validate();
+        if (connectorConfig.trackData && formatted) {
+            event.addFields(createTrackMetas(record));
+        }
+        if (connectorConfig.enableStreaming) {
+            event.validateWithoutCaching();
+        } else {
+            event.validate();
+        }
 
         return event;
     }
 
+    // forwards the original bytes of a pre-formatted HEC event, null when it has to be deserialized instead
+    private JsonEvent createPassthroughEvent(final SinkRecord record) {
+        Map<String, String> extraFields = connectorConfig.enrichments;
+        if (connectorConfig.trackData) {
+            Map<String, String> trackMetas = createTrackMetas(record);
+            if (extraFields != null) {
+                // tracking metadata wins over enrichments with the same name, as when the fields are added one by one
+                extraFields = new HashMap<>(extraFields);
+                extraFields.putAll(trackMetas);
+            } else {
+                extraFields = trackMetas;
+            }
+        }
+
+        Object value = record.value();
+        if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            return JsonEvent.fromFormatted(bytes, 0, bytes.length, extraFields, record);
+        }
+
+        if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+            ByteBuffer buf = (ByteBuffer) value;
+            return JsonEvent.fromFormatted(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining(),
+                    extraFields, record);
+        }
+
+        if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            return JsonEvent.fromFormatted(bytes, 0, bytes.length, extraFields, record);
+        }
+        return null;
+    }
+
+    private static Map<String, String> createTrackMetas(final SinkRecord record) {
+        Map<String, String> trackMetas = new HashMap<>();
+        for (TiedField field: TRACK_FIELDS) {
+            trackMetas.put(field.getName(), field.value(record));
+        }
+        return trackMetas;
+    }
+
+    private static TiedField[] createTrackFields() {
+        List<TiedField> fields = new ArrayList<>();
+        fields.add(TiedField.ofLong("kafka_offset", record -> ((SinkRecord) record).kafkaOffset()));
+        fields.add(TiedField.of("kafka_timestamp", record -> String.valueOf(((SinkRecord) record).timestamp())));
+        fields.add(TiedField.of("kafka_topic", record -> ((SinkRecord) record).topic()));
+        fields.add(TiedField.of("kafka_partition", record -> String.valueOf(((SinkRecord) record).kafkaPartition())));
+        fields.add(TiedField.of("kafka_record_key", record -> String.valueOf(((SinkRecord) record).key())));
+        if (HOSTNAME != null) {
+            fields.add(TiedField.of("kafka_connect_host", record -> HOSTNAME));
+        }
+        return fields.toArray(new TiedField[0]);
+    }
+
+    // parse the pre-formatted HEC event from the original bytes when the converter hands them over as is
+    private static JsonEvent readFormattedEvent(final Object value) throws IOException {
+        if (value instanceof byte[]) {
+            return jsonEventReader.readValue((byte[]) value);
+        }
+
+        if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+            ByteBuffer buf = (ByteBuffer) value;
+            return jsonEventReader.readValue(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+
+        return jsonEventReader.readValue(value.toString());
+    }
+
     private Event addHeaders(Event event, SinkRecord record) {
         Headers headers = record.headers();
         if (headers.isEmpty() && connectorConfig.headerCustom.isEmpty()) {
@@ -443,16 +546,16 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
         Header headerSourcetype = headers.lastWithName(connectorConfig.headerSourcetype);
 
         if (headerIndex != null && headerIndex.value() != null) {
-            event.setIndex(headerIndex.value().toString());
+            event.setIndex(sharedHeaderMeta(headerIndex.value()));
         }
         if (headerHost != null && headerHost.value() != null) {
-            event.setHost(headerHost.value().toString());
+            event.setHost(sharedHeaderMeta(headerHost.value()));
         }
         if (headerSource != null && headerSource.value() != null) {
-            event.setSource(headerSource.value().toString());
+            event.setSource(sharedHeaderMeta(headerSource.value()));
         }
         if (headerSourcetype != null && headerSourcetype.value() != null) {
-            event.setSourcetype(headerSourcetype.value().toString());
+            event.setSourcetype(sharedHeaderMeta(headerSourcetype.value()));
         }
 
         // Custom headers are configured with a comma separated list passed in configuration
@@ -472,26 +575,58 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
         return event;
     }
 
+    // header metadata values repeat across records, events keep one String per value instead of one per record
+    String sharedHeaderMeta(final Object value) {
+        String meta = value.toString();
+        String shared = headerMetas.get(meta);
+        if (shared != null) {
+            return shared;
+        }
+
+        headerMetas.put(meta, meta);
+        return meta;
+    }
+
     private JsonEvent createHECEventNonFormatted(final SinkRecord record) {
         JsonEvent event = new JsonEvent(record.value(), record);
         if (connectorConfig.useRecordTimestamp && record.timestamp() != null) {
-            event.setTime(record.timestamp() / 1000.0); // record timestamp is in milliseconds
+            event.setTimeMillis(record.timestamp());
         }
 
         if(connectorConfig.enableTimestampExtraction) {
-            timestampExtraction(event);
+            timestampExtractor.extract(event);
          }
 
-        Map<String, String> metas = connectorConfig.topicMetas.get(record.topic());
-        if (metas != null) {
-            event.setIndex(metas.get(SplunkSinkConnectorConfig.INDEX));
-            event.setSourcetype(metas.get(SplunkSinkConnectorConfig.SOURCETYPE));
-            event.setSource(metas.get(SplunkSinkConnectorConfig.SOURCE));
-            event.addFields(connectorConfig.enrichments);
+        JsonEventTemplate template = topicTemplate(record.topic());
+        if (template != null) {
+            event.setTemplate(template);
         }
         return event;
     }
 
+    // the metadata and enrichments of a topic, and their json encoding, are shared by all the events of the topic
+    private JsonEventTemplate topicTemplate(final String topic) {
+        JsonEventTemplate template = topicTemplates.get(topic);
+        if (template == null) {
+            TiedField[] trackFields = connectorConfig.trackData ? TRACK_FIELDS : NO_TRACK_FIELDS;
+            Map<String, String> metas = connectorConfig.topicMetas.get(topic);
+            if (metas == null) {
+                // topics without metadata, such as the ones matched by topics.regex, get no enrichments either
+                if (trackFields.length == 0) {
+                    return null;
+                }
+                template = new JsonEventTemplate(null, null, null, null, null, trackFields);
+            } else {
+                Map<String, String> enrichments = connectorConfig.enrichments;
+                template = new JsonEventTemplate(metas.get(SplunkSinkConnectorConfig.INDEX),
+                        metas.get(SplunkSinkConnectorConfig.SOURCE), metas.get(SplunkSinkConnectorConfig.SOURCETYPE),
+                        null, enrichments == null || enrichments.isEmpty() ? null : enrichments, trackFields);
+            }
+            topicTemplates.put(topic, template);
+        }
+        return template;
+    }
+
     private Event createHecEventFromMalformed(final SinkRecord record) {
         Object data;
         if (connectorConfig.raw) {
@@ -540,43 +675,4 @@ public final class SplunkSinkTask extends SinkTask implements PollerCallback {
             }
         }
     }
-
-    private void timestampExtraction(Event event) {
-        String jsonStr = event.getEvent().toString();
-        String string = jsonStr.replaceAll("\\\"", "\"");
-        String timestamp = "";
-        final Pattern pattern = Pattern.compile(connectorConfig.regex);
-        final Matcher matcher = pattern.matcher(string);
-        try {
-            if (matcher.find()) {
-                timestamp = (matcher.group("time"));
-            }
-        } catch (Exception e) {
-            log.warn("Couldn't extract timestamp", e);
-            return;
-        }
-
-        if (connectorConfig.timestampFormat.equalsIgnoreCase("epoch")) {
-            try {
-                double epoch = Double.parseDouble(timestamp);
-                long long_epoch = Double.valueOf(epoch).longValue();
-                event.setTime(epoch / (Math.pow(10, Long.toString(long_epoch).length()-10.00)));
-                
-            } catch (Exception e) {
-                log.warn("Could not set the time", e);
-            }
-        } else {
-            SimpleDateFormat df = new SimpleDateFormat(connectorConfig.timestampFormat);
-            Date date;
-            try {
-                if(!connectorConfig.timeZone.isEmpty())
-                    df.setTimeZone(TimeZone.getTimeZone(connectorConfig.timeZone));
-
-                date = df.parse(timestamp);
-                event.setTime(date.getTime() / 1000.0);
-            } catch (ParseException e) {
-                log.warn("Couldn't parse the timestamp", e);
-            }
-        }
-    }
 }
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.kafka.connect;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.splunk.hecclient.Event;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TimestampExtractor sets the time of events from the "time" named group of the timestamp regex. The regex and the
+ * date format are compiled once, and the event data is matched in place when it is a String or raw bytes. Epoch
+ * timestamps made of digits only are converted without being parsed as a String.
+ * <p>
+ * When a timestamp field path such as "$.meta.ts" is given, it is used instead of the regex. JSON event data is
+ * walked with a streaming parser which skips the objects off the path and stops at the field, and Struct and Map
+ * event data are walked by field name. Numeric fields, and Date values of Struct timestamps, are epoch timestamps
+ * whatever the timestamp format is.
+ * <p>
+ * TimestampExtractor reuses its Matcher and SimpleDateFormat, it is owned by a single task and is not multi-thread
+ * safe. timestamp.format keeps the SimpleDateFormat pattern syntax it always had.
+ *
+ * @since 2.2.3
+ */
+final class TimestampExtractor {
+    private static final Logger log = LoggerFactory.getLogger(TimestampExtractor.class);
+    private static final String TIME_GROUP = "time";
+    private static final String EPOCH = "epoch";
+    private static final String PATH_ROOT = "$";
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final Matcher matcher; // null when the field path is used
+    private final String[] fieldPath;
+    private final SimpleDateFormat dateFormat; // null for epoch timestamps
+    private final TimeZone timeZone;
+
+    TimestampExtractor(final String regex, final String fieldPath, final String timestampFormat, final String timeZone) {
+        if (fieldPath.isEmpty()) {
+            this.matcher = Pattern.compile(regex).matcher("");
+            this.fieldPath = null;
+        } else {
+            this.matcher = null;
+            this.fieldPath = parseFieldPath(fieldPath);
+        }
+
+        if (timestampFormat.equalsIgnoreCase(EPOCH)) {
+            this.dateFormat = null;
+            this.timeZone = null;
+        } else {
+            this.dateFormat = new SimpleDateFormat(timestampFormat);
+            this.timeZone = timeZone.isEmpty() ? dateFormat.getTimeZone() : TimeZone.getTimeZone(timeZone);
+        }
+    }
+
+    void extract(final Event event) {
+        if (fieldPath != null) {
+            extractFromField(event);
+            return;
+        }
+
+        int start;
+        int end;
+        CharSequence data = asCharSequence(event.getEvent());
+        try {
+            matcher.reset(data);
+            if (!matcher.find() || (start = matcher.start(TIME_GROUP)) < 0) {
+                log.warn("Couldn't extract timestamp, no match found");
+                return;
+            }
+            end = matcher.end(TIME_GROUP);
+        } catch (Exception e) {
+            log.warn("Couldn't extract timestamp", e);
+            return;
+        } finally {
+            // do not hold on to the event data
+            matcher.reset("");
+        }
+
+        setTime(event, data, start, end);
+    }
+
+    private void extractFromField(final Event event) {
+        Object data = event.getEvent();
+        try {
+            if (data instanceof Struct) {
+                setTime(event, findInStruct((Struct) data));
+            } else if (data instanceof Map) {
+                setTime(event, findInMap((Map<?, ?>) data));
+            } else if (data instanceof byte[]) {
+                try (JsonParser parser = jsonFactory.createParser((byte[]) data)) {
+                    setTime(event, parser, findInJson(parser));
+                }
+            } else {
+                try (JsonParser parser = jsonFactory.createParser(data.toString())) {
+                    setTime(event, parser, findInJson(parser));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Couldn't extract timestamp", e);
+        }
+    }
+
+    // returns the token of the field value with the parser positioned on it, null when the field is not found
+    private JsonToken findInJson(final JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+
+        int depth = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            token = parser.nextToken();
+            if (!name.equals(fieldPath[depth])) {
+                parser.skipChildren();
+            } else if (depth == fieldPath.length - 1) {
+                return token;
+            } else if (token == JsonToken.START_OBJECT) {
+                depth++;
+            } else {
+                return null;
+            }
+        }
+        // only the objects on the path are entered, so the end of any of them means the field is not there
+        return null;
+    }
+
+    private Object findInStruct(Struct struct) {
+        for (int i = 0; i < fieldPath.length; i++) {
+            Field field = struct.schema().field(fieldPath[i]);
+            if (field == null) {
+                return null;
+            }
+
+            Object value = struct.get(field);
+            if (i == fieldPath.length - 1) {
+                return value;
+            }
+            if (!(value instanceof Struct)) {
+                return null;
+            }
+            struct = (Struct) value;
+        }
+        return null;
+    }
+
+    private Object findInMap(Map<?, ?> map) {
+        for (int i = 0; i < fieldPath.length; i++) {
+            Object value = map.get(fieldPath[i]);
+            if (i == fieldPath.length - 1) {
+                return value;
+            }
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            map = (Map<?, ?>) value;
+        }
+        return null;
+    }
+
+    private void setTime(final Event event, final JsonParser parser, final JsonToken token) throws IOException {
+        if (token != null && (token.isNumeric() || token == JsonToken.VALUE_STRING)) {
+            // read the value from the parser buffer instead of building a String
+            CharBuffer text = CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            if (token.isNumeric()) {
+                event.setTime(epochSeconds(text, 0, text.length()));
+            } else {
+                setTime(event, text, 0, text.length());
+            }
+        } else {
+            log.warn("Couldn't extract timestamp, no timestamp found at {}", String.join(".", fieldPath));
+        }
+    }
+
+    private void setTime(final Event event, final Object value) {
+        if (value instanceof Number) {
+            String text = value.toString();
+            event.setTime(epochSeconds(text, 0, text.length()));
+        } else if (value instanceof Date) {
+            event.setTimeMillis(((Date) value).getTime());
+        } else if (value instanceof CharSequence) {
+            CharSequence text = (CharSequence) value;
+            setTime(event, text, 0, text.length());
+        } else {
+            log.warn("Couldn't extract timestamp, no timestamp found at {}", String.join(".", fieldPath));
+        }
+    }
+
+    private void setTime(final Event event, final CharSequence data, final int start, final int end) {
+        if (dateFormat == null) {
+            try {
+                event.setTime(epochSeconds(data, start, end));
+            } catch (Exception e) {
+                log.warn("Could not set the time", e);
+            }
+        } else {
+            try {
+                // parsing a zone name may change the zone of the format, set it back for every event
+                dateFormat.setTimeZone(timeZone);
+                Date date = dateFormat.parse(data.subSequence(start, end).toString());
+                event.setTimeMillis(date.getTime());
+            } catch (ParseException e) {
+                log.warn("Couldn't parse the timestamp", e);
+            }
+        }
+    }
+
+    /**
+     * Splits a field path such as "$.meta.ts" or "meta.ts" into field names.
+     *
+     * @throws IllegalArgumentException when the path is invalid
+     */
+    static String[] parseFieldPath(final String path) {
+        String fields = path.trim();
+        if (fields.startsWith(PATH_ROOT + ".")) {
+            fields = fields.substring(PATH_ROOT.length() + 1);
+        }
+
+        String[] names = fields.split("\\.", -1);
+        for (String name: names) {
+            if (name.isEmpty() || name.equals(PATH_ROOT)) {
+                throw new IllegalArgumentException("Invalid timestamp field path " + path);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Converts an epoch timestamp in seconds, milliseconds, microseconds or nanoseconds to seconds, telling them
+     * apart by the number of digits of the integral part.
+     */
+    static double epochSeconds(final CharSequence data, final int start, final int end) {
+        // digits only, which fit in a long, is the common case and does not need a String
+        int len = end - start;
+        if (len > 0 && len <= 18) {
+            long value = 0;
+            int i = start;
+            for (; i < end; i++) {
+                char c = data.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+
+            if (i == end) {
+                return value / Math.pow(10, Long.toString(value).length() - 10.00);
+            }
+        }
+
+        double epoch = Double.parseDouble(data.subSequence(start, end).toString());
+        long longEpoch = Double.valueOf(epoch).longValue();
+        return epoch / Math.pow(10, Long.toString(longEpoch).length() - 10.00);
+    }
+
+    private static CharSequence asCharSequence(final Object data) {
+        if (data instanceof CharSequence) {
+            return (CharSequence) data;
+        }
+        if (data instanceof byte[]) {
+            byte[] bytes = (byte[]) data;
+            if (isAscii(bytes)) {
+                return new ByteCharSequence(bytes, 0, bytes.length);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return data.toString();
+    }
+
+    private static boolean isAscii(final byte[] data) {
+        for (byte b: data) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ByteCharSequence exposes raw bytes as chars one byte at a time, so ASCII-only events can be matched without
+     * decoding them. Events with any non-ASCII byte are decoded as UTF-8 instead.
+     */
+    static final class ByteCharSequence implements CharSequence {
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+
+        ByteCharSequence(final byte[] data, final int offset, final int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+            }
+            return (char) (data[offset + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start=" + start + ", end=" + end + ", length=" + length);
+            }
+            return new ByteCharSequence(data, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (data[offset + i] & 0xff);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AimdLimiterTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void concurrency() {
+        long now = 0;
+        AimdLimiter limiter = new AimdLimiter(8, now);
+        Assert.assertEquals(8, limiter.getConcurrency());
+        Assert.assertTrue(limiter.hasCapacity(7, now));
+        Assert.assertFalse(limiter.hasCapacity(8, now));
+
+        // push backs close to each other count once
+        limiter.congested(now += MS);
+        limiter.congested(now += MS);
+        Assert.assertEquals(4, limiter.getConcurrency());
+        Assert.assertFalse(limiter.hasCapacity(4, now));
+
+        limiter.congested(now += 200 * MS);
+        limiter.congested(now += 200 * MS);
+        limiter.congested(now += 200 * MS);
+        Assert.assertEquals(1, limiter.getConcurrency());
+        Assert.assertTrue(limiter.hasCapacity(0, now));
+
+        // grows by about one for every round of successes
+        limiter.succeeded(0, MS, MS, now += MS);
+        Assert.assertEquals(2, limiter.getConcurrency());
+        limiter.succeeded(0, MS, MS, now += MS);
+        limiter.succeeded(0, MS, MS, now += MS);
+        Assert.assertEquals(2, limiter.getConcurrency());
+        limiter.succeeded(0, MS, MS, now += MS);
+        Assert.assertEquals(3, limiter.getConcurrency());
+
+        // slow successes don't grow the limits
+        for (int i = 0; i < 10; i++) {
+            limiter.succeeded(0, 10 * MS, MS, now += MS);
+        }
+        Assert.assertEquals(3, limiter.getConcurrency());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.succeeded(0, MS, MS, now += MS);
+        }
+        Assert.assertEquals(8, limiter.getConcurrency());
+    }
+
+    @Test
+    public void byteRate() {
+        long now = 0;
+        AimdLimiter limiter = new AimdLimiter(4, now);
+        // 4 MB per second until the indexer pushes back
+        for (int i = 0; i < 20; i++) {
+            limiter.posted(400_000, now);
+            Assert.assertTrue(limiter.hasCapacity(0, now));
+            limiter.succeeded(400_000, MS, MS, now += 100 * MS);
+        }
+        Assert.assertEquals(0, limiter.getByteRate(), 0);
+
+        limiter.congested(now);
+        Assert.assertEquals(2_000_000, limiter.getByteRate(), 1);
+
+        // one second worth of bytes may be posted, then the rate is enforced
+        now += TimeUnit.SECONDS.toNanos(1);
+        limiter.posted(2_200_000, now);
+        Assert.assertFalse(limiter.hasCapacity(0, now));
+        Assert.assertFalse(limiter.hasCapacity(0, now + 100 * MS));
+        Assert.assertTrue(limiter.hasCapacity(0, now + 100 * MS + 1));
+
+        // grows additively, then is lifted once the throughput is well below it
+        limiter.succeeded(0, MS, MS, now += MS);
+        Assert.assertEquals(2_000_000 + AimdLimiter.BYTE_RATE_INCREASE / 2, limiter.getByteRate(), 1);
+        for (int i = 0; i < 100 && limiter.getByteRate() != 0; i++) {
+            limiter.succeeded(1000, MS, MS, now += 100 * MS);
+        }
+        Assert.assertEquals(0, limiter.getByteRate(), 0);
+    }
+
+    @Test
+    public void sharedByChannels() {
+        long now = 0;
+        AtomicInteger released = new AtomicInteger();
+        AimdLimiter limiter = new AimdLimiter(2, now, released::incrementAndGet);
+        limiter.addChannel(2);
+        Assert.assertEquals(4, limiter.getConcurrency());
+
+        // the POSTs in flight on all the channels count
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(limiter.hasCapacity(now));
+            limiter.posted(100, now);
+        }
+        Assert.assertFalse(limiter.hasCapacity(now));
+        Assert.assertEquals(4, limiter.getInFlightRequests());
+
+        limiter.finished();
+        Assert.assertTrue(limiter.hasCapacity(now));
+        Assert.assertEquals(1, released.get());
+    }
+
+    @Test
+    public void byteRateFloor() {
+        long now = 0;
+        AimdLimiter limiter = new AimdLimiter(1, now);
+        // no throughput known, the byte rate stays unlimited
+        limiter.congested(now += 200 * MS);
+        Assert.assertEquals(0, limiter.getByteRate(), 0);
+
+        limiter.succeeded(1000, MS, MS, now += TimeUnit.SECONDS.toNanos(1));
+        limiter.congested(now += 200 * MS);
+        Assert.assertEquals(AimdLimiter.MIN_BYTE_RATE, limiter.getByteRate(), 0);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncIndexerTest {
+    private static final String baseUrl = "https://localhost:8088";
+    private static final HecConfig hecConfig =
+        new HecConfig(Collections.emptyList(), "mytoken")
+            .setKerberosPrincipal("");
+
+    @Test
+    public void takeOverChannel() {
+        Indexer indexer = new Indexer(baseUrl, null, null, hecConfig);
+        HecChannel channel = indexer.getChannel();
+        AsyncIndexer async = new AsyncIndexer(indexer, null, null, 2);
+        Assert.assertSame(channel, async.getChannel());
+        Assert.assertSame(async, channel.getIndexer());
+        Assert.assertEquals(baseUrl, async.getBaseUrl());
+        Assert.assertSame(indexer.getHeaders(), async.getHeaders());
+        Assert.assertEquals(baseUrl, async.toString());
+        Assert.assertFalse(async.hasBackPressure());
+        Assert.assertEquals(0, async.getInFlightRequests());
+    }
+
+    @Test(expected = HecException.class)
+    public void createWithInvalidMaxInFlight() {
+        Indexer indexer = new Indexer(baseUrl, null, null, hecConfig);
+        new AsyncIndexer(indexer, null, null, 0);
+    }
+
+    @Test
+    public void sendWithSuccess() throws InterruptedException {
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        PollerMock poller = new PollerMock();
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+
+        AsyncIndexer async = new AsyncIndexer(new Indexer(baseUrl, client, poller, hecConfig), poller, sender, 2);
+        EventBatch batch = UnitUtil.createBatch();
+        Assert.assertTrue(async.send(batch));
+
+        sender.shutdown();
+        Assert.assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertSame(batch, poller.getBatch());
+        Assert.assertNull(poller.getFailedBatch());
+        Assert.assertSame(async.getChannel(), poller.getChannel());
+        Assert.assertEquals(CloseableHttpClientMock.SUCCESS, poller.getResponse());
+        Assert.assertEquals(0, async.getInFlightRequests());
+    }
+
+    @Test
+    public void sendWithIOError() throws InterruptedException {
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.EXCEPTION);
+        PollerMock poller = new PollerMock();
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+
+        AsyncIndexer async = new AsyncIndexer(new Indexer(baseUrl, client, poller, hecConfig), poller, sender, 2);
+        EventBatch batch = UnitUtil.createBatch();
+        Assert.assertTrue(async.send(batch));
+
+        sender.shutdown();
+        Assert.assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertNull(poller.getBatch());
+        Assert.assertSame(batch, poller.getFailedBatch());
+        Assert.assertNotNull(poller.getException());
+        Assert.assertTrue(async.hasBackPressure());
+        Assert.assertEquals(0, async.getInFlightRequests());
+    }
+
+    @Test
+    public void sendWithUnexpectedError() throws InterruptedException {
+        CloseableHttpClientMock client = new CloseableHttpClientMock() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                throw new IllegalStateException("mocked up");
+            }
+        };
+        PollerMock poller = new PollerMock();
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+
+        AsyncIndexer async = new AsyncIndexer(new Indexer(baseUrl, client, poller, hecConfig), poller, sender, 2);
+        EventBatch batch = UnitUtil.createBatch();
+        Assert.assertTrue(async.send(batch));
+
+        sender.shutdown();
+        Assert.assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertNull(poller.getBatch());
+        Assert.assertSame(batch, poller.getFailedBatch());
+        Assert.assertTrue(poller.getException() instanceof HecException);
+        Assert.assertTrue(poller.getException().getCause() instanceof IllegalStateException);
+        Assert.assertEquals(0, async.getInFlightRequests());
+    }
+
+    @Test
+    public void sendWithErrorWithoutText() throws InterruptedException {
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.NO_TEXT_ERROR);
+        PollerMock poller = new PollerMock();
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+
+        AsyncIndexer async = new AsyncIndexer(new Indexer(baseUrl, client, poller, hecConfig), poller, sender, 2);
+        EventBatch batch = UnitUtil.createBatch();
+        Assert.assertTrue(async.send(batch));
+
+        sender.shutdown();
+        Assert.assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertSame(batch, poller.getFailedBatch());
+        Assert.assertTrue(poller.getException() instanceof HecStatusException);
+        Assert.assertEquals(502, ((HecStatusException) poller.getException()).getStatus());
+    }
+
+    @Test
+    public void sendWithRejectedExecution() {
+        PollerMock poller = new PollerMock();
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+        sender.shutdown();
+
+        AsyncIndexer async = new AsyncIndexer(new Indexer(baseUrl, new CloseableHttpClientMock(), poller, hecConfig), poller, sender, 1);
+        EventBatch batch = UnitUtil.createBatch();
+        Assert.assertFalse(async.send(batch));
+        Assert.assertSame(batch, poller.getFailedBatch());
+        Assert.assertEquals(0, async.getInFlightRequests());
+    }
+
+    @Test
+    public void pipelineRequests() throws InterruptedException {
+        final int inFlight = 3;
+        // every request is held until all of them are in flight at the same time
+        final CountDownLatch arrived = new CountDownLatch(inFlight);
+        CloseableHttpClientMock client = new CloseableHttpClientMock() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request,
+                    HttpContext context) throws IOException {
+                arrived.countDown();
+                try {
+                    if (!arrived.await(5, TimeUnit.SECONDS)) {
+                        throw new IOException("requests were not sent concurrently");
+                    }
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return super.doExecute(target, request, context);
+            }
+        };
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        PollerMock poller = new PollerMock() {
+            @Override
+            public void add(HecChannel channel, EventBatch batch, String resp) {
+                committed.incrementAndGet();
+            }
+
+            @Override
+            public void fail(HecChannel channel, EventBatch batch, Exception ex) {
+                failed.incrementAndGet();
+            }
+        };
+        ExecutorService sender = Executors.newFixedThreadPool(inFlight);
+
+        AsyncIndexer async = new AsyncIndexer(new Indexer(baseUrl, client, poller, hecConfig), poller, sender, inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            Assert.assertTrue(async.send(UnitUtil.createBatch()));
+        }
+
+        sender.shutdown();
+        Assert.assertTrue(sender.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(inFlight, committed.get());
+        Assert.assertEquals(0, failed.get());
+        Assert.assertEquals(0, async.getInFlightRequests());
+    }
+}
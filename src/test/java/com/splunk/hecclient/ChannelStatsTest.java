@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ChannelStatsTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void ackLatencyOutlivesAckPolls() {
+        // the ack latency is sampled once per poll, 10 seconds apart by default
+        long pollInterval = TimeUnit.SECONDS.toNanos(10);
+        ChannelStats.Ewma ackLatency = new ChannelStats.Ewma(ChannelStats.ackDecayNanos(pollInterval));
+        ackLatency.raise(SECOND, 0);
+        Assert.assertEquals(SECOND, ackLatency.get(0));
+        // a slow ack still weighs most of its value when the next poll comes
+        Assert.assertTrue(ackLatency.get(pollInterval) > SECOND * 7 / 10);
+
+        // a post latency, sampled on every POST, is mostly forgotten by then
+        ChannelStats.Ewma postLatency = new ChannelStats.Ewma(ChannelStats.DECAY_NANOS);
+        postLatency.record(SECOND, 0);
+        Assert.assertTrue(postLatency.get(pollInterval) < SECOND / 100);
+    }
+
+    @Test
+    public void ackDecayNanos() {
+        Assert.assertEquals(30 * SECOND, ChannelStats.ackDecayNanos(10 * SECOND));
+        // never faster than the post latency
+        Assert.assertEquals(ChannelStats.DECAY_NANOS, ChannelStats.ackDecayNanos(0));
+    }
+
+    @Test
+    public void recordFasterSamples() {
+        ChannelStats.Ewma ewma = new ChannelStats.Ewma(ChannelStats.DECAY_NANOS);
+        ewma.record(SECOND, 0);
+        // slower samples are taken as is
+        ewma.record(2 * SECOND, 1);
+        Assert.assertEquals(2 * SECOND, ewma.get(1));
+        // faster ones weigh at least MIN_SAMPLE_WEIGHT
+        ewma.record(0, 1);
+        Assert.assertTrue(ewma.get(1) <= 2 * SECOND * (1 - ChannelStats.MIN_SAMPLE_WEIGHT));
+        Assert.assertTrue(ewma.get(1) > 0);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class CircuitBreakerTest {
+    private static final long OPEN_NANOS = 1000;
+
+    private final EventBatch batch = UnitUtil.createBatch();
+
+    @Test
+    public void consecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("indexer", 3, 0, OPEN_NANOS);
+        breaker.recordFailure(batch, 0);
+        breaker.recordFailure(batch, 0);
+        breaker.recordSuccess(batch);
+        breaker.recordFailure(batch, 0);
+        breaker.recordFailure(batch, 0);
+        Assert.assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allowsRequests(0));
+
+        breaker.recordFailure(batch, 10);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowsRequests(10 + OPEN_NANOS - 1));
+        Assert.assertFalse(breaker.tryAcquire(batch, 10 + OPEN_NANOS - 1));
+    }
+
+    @Test
+    public void errorRate() {
+        CircuitBreaker breaker = new CircuitBreaker("indexer", 0, 50, OPEN_NANOS);
+        // not checked before the window is full
+        for (int i = 0; i < CircuitBreaker.WINDOW_SIZE / 2; i++) {
+            breaker.recordFailure(batch, 0);
+        }
+        Assert.assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+
+        // the oldest outcomes leave the window
+        for (int i = 0; i < CircuitBreaker.WINDOW_SIZE; i++) {
+            breaker.recordSuccess(batch);
+        }
+        for (int i = 0; i < CircuitBreaker.WINDOW_SIZE / 2 - 1; i++) {
+            breaker.recordFailure(batch, 0);
+            breaker.recordSuccess(batch);
+        }
+        Assert.assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+
+        breaker.recordFailure(batch, 0);
+        breaker.recordFailure(batch, 0);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker("indexer", 1, 0, OPEN_NANOS);
+        breaker.recordFailure(batch, 0);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+
+        // a single probe is let through
+        Assert.assertTrue(breaker.allowsRequests(OPEN_NANOS));
+        Assert.assertTrue(breaker.tryAcquire(batch, OPEN_NANOS));
+        Assert.assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowsRequests(OPEN_NANOS + 1));
+        Assert.assertFalse(breaker.tryAcquire(batch, OPEN_NANOS + 1));
+
+        // opens again when the probe fails
+        breaker.recordFailure(batch, 2 * OPEN_NANOS);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.tryAcquire(batch, 3 * OPEN_NANOS - 1));
+
+        // a lost probe is replaced, it no longer closes the breaker when it comes back
+        EventBatch lost = UnitUtil.createBatch();
+        Assert.assertTrue(breaker.tryAcquire(lost, 3 * OPEN_NANOS));
+        Assert.assertTrue(breaker.tryAcquire(batch, 4 * OPEN_NANOS));
+        breaker.recordSuccess(lost);
+        Assert.assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+
+        breaker.recordSuccess(batch);
+        Assert.assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.tryAcquire(batch, 4 * OPEN_NANOS));
+        breaker.recordFailure(batch, 4 * OPEN_NANOS);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void stragglers() {
+        CircuitBreaker breaker = new CircuitBreaker("indexer", 1, 0, OPEN_NANOS);
+        EventBatch straggler = UnitUtil.createBatch();
+        breaker.recordFailure(batch, 0);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+
+        // the answers to batches sent before the breaker opened do not change it
+        breaker.recordSuccess(straggler);
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.tryAcquire(batch, OPEN_NANOS - 1));
+
+        Assert.assertTrue(breaker.tryAcquire(batch, OPEN_NANOS));
+        breaker.recordSuccess(straggler);
+        breaker.recordFailure(straggler, OPEN_NANOS);
+        Assert.assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+
+        breaker.recordSuccess(batch);
+        Assert.assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void forConfig() {
+        HecConfig config = new HecConfig(Arrays.asList("https://dummy:8088"), "token");
+        Assert.assertNull(CircuitBreaker.forConfig("indexer", config));
+
+        config.setCircuitBreakerErrorRate(50);
+        Assert.assertNotNull(CircuitBreaker.forConfig("indexer", config));
+    }
+}
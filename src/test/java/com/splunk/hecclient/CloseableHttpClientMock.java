@@ -33,6 +33,7 @@ public class CloseableHttpClientMock extends CloseableHttpClient {
     public static final String INVALID_DATA_FORMAT = "{\"text\":\"Invalid data format\",\"code\":6}";
     public static final String INVALID_TOKEN = "{\"text\":\"Invalid token\",\"code\":4}";
     public static final String INVALID_INDEX = "{\"text\":\"Incorrect index\",\"code\":4,\"invalid-event-number\":1}";
+    public static final String NO_TEXT_ERROR = "{}";
     public static final String EXCEPTION = "excpetion";
 
     private String resp = "";
@@ -55,6 +56,8 @@ public class CloseableHttpClientMock extends CloseableHttpClient {
             return createResponse(resp, 400);
         }else if (resp.equals(INVALID_INDEX)) {
             return createResponse(resp, 400);
+        } else if (resp.equals(NO_TEXT_ERROR)) {
+            return createResponse(resp, 502);
         } else {
             return createResponse(SUCCESS, 201);
         }
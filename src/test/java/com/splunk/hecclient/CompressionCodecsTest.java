@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+public class CompressionCodecsTest {
+    @Test
+    public void forName() {
+        CompressionCodec codec = CompressionCodecs.forName("gzip");
+        Assert.assertEquals("gzip", codec.getName());
+        Assert.assertEquals("gzip", codec.getContentEncoding());
+        Assert.assertSame(codec, CompressionCodecs.forName(" GZIP "));
+    }
+
+    @Test(expected = HecException.class)
+    public void forUnknownName() {
+        CompressionCodecs.forName("snappy");
+    }
+
+    @Test(expected = HecException.class)
+    public void forEmptyName() {
+        CompressionCodecs.forName("");
+    }
+
+    @Test
+    public void gzipLevels() throws IOException {
+        CompressionCodec codec = CompressionCodecs.forName("gzip");
+        Assert.assertTrue(codec.isValidLevel(-1));
+        Assert.assertTrue(codec.isValidLevel(0));
+        Assert.assertTrue(codec.isValidLevel(9));
+        Assert.assertFalse(codec.isValidLevel(10));
+        Assert.assertFalse(codec.isValidLevel(-2));
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("{\"event\":\"hello world ").append(i).append("\",\"host\":\"localhost\"}\n");
+        }
+        byte[] payload = builder.toString().getBytes("UTF-8");
+
+        byte[] stored = compress(codec, payload, 0);
+        byte[] fast = compress(codec, payload, 1);
+        byte[] best = compress(codec, payload, 9);
+        Assert.assertTrue(stored.length > payload.length);
+        Assert.assertTrue(fast.length < payload.length);
+        Assert.assertTrue(best.length <= fast.length);
+
+        Assert.assertArrayEquals(payload, decompress(stored));
+        Assert.assertArrayEquals(payload, decompress(fast));
+        Assert.assertArrayEquals(payload, decompress(best));
+    }
+
+    @Test(expected = HecException.class)
+    public void gzipInvalidLevel() throws IOException {
+        CompressionCodecs.forName("gzip").compress(new ByteArrayOutputStream(), 10);
+    }
+
+    @Test
+    public void batchWithCompressionLevel() throws IOException {
+        EventBatch batch = UnitUtil.createMultiBatch(100);
+        batch.setEnableCompression(true);
+        byte[] defaultLevel = batch.getCompressedData();
+
+        batch.setCompression(CompressionCodecs.forName("gzip"), 0);
+        byte[] stored = batch.getCompressedData();
+        Assert.assertNotSame(defaultLevel, stored);
+        Assert.assertTrue(stored.length > defaultLevel.length);
+        Assert.assertArrayEquals(decompress(defaultLevel), decompress(stored));
+        Assert.assertEquals("gzip", batch.getContentEncoding());
+    }
+
+    private static byte[] compress(CompressionCodec codec, byte[] payload, int level) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(bos, level)) {
+            out.write(payload);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = gis.read(buf)) > 0) {
+                bos.write(buf, 0, n);
+            }
+        }
+        return bos.toByteArray();
+    }
+}
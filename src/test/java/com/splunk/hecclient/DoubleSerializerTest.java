@@ -21,6 +21,13 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 public class DoubleSerializerTest {
     @JsonSerialize(using = DoubleSerializer.class)
     private Double d;
@@ -51,4 +58,39 @@ public class DoubleSerializerTest {
         bytes = mapper.writeValueAsBytes(this);
         Assert.assertEquals("{\"d\":10000.123456}", new String(bytes));
     }
+
+    @Test
+    public void sameAsBigDecimal() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        Random random = new Random(42);
+        List<Double> values = new ArrayList<>(Arrays.asList(0.0, -0.0, 0.0000005, -0.0000005, 0.0000015, 1.0E-7,
+                -1.5, 1693801816.993, 1693801816.9934995, 1693801816.9934996, 4294967295.999999, 4294967296.0000005,
+                1.693801816993E12, 9.2E12, -9.2E12, Double.MIN_VALUE));
+        for (int i = 0; i < 10000; i++) {
+            values.add(random.nextLong() % 4_000_000_000_000_000L / 1_000_000.0); // whole microseconds
+            values.add(random.nextLong() % 4_000_000_000_000L / 1000.0); // whole milliseconds
+            values.add((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16))); // anything
+        }
+
+        for (double value: values) {
+            d = value;
+            String expected = BigDecimal.valueOf(value).setScale(6, RoundingMode.HALF_UP).toPlainString();
+            Assert.assertEquals(String.valueOf(value), "{\"d\":" + expected + "}", mapper.writeValueAsString(this));
+        }
+    }
+
+    @Test
+    public void toMicros() {
+        Assert.assertEquals(1693801816993000L, DoubleSerializer.toMicros(1693801816.993));
+        Assert.assertEquals(1L, DoubleSerializer.toMicros(0.0000005));
+        Assert.assertEquals(-1L, DoubleSerializer.toMicros(-0.0000005));
+        Assert.assertEquals(10000123457L, DoubleSerializer.toMicros(10000.123456789));
+    }
+
+    @Test
+    public void toMicrosNotInLong() {
+        Assert.assertEquals(DoubleSerializer.NO_TIME, DoubleSerializer.toMicros(Double.NaN));
+        Assert.assertEquals(DoubleSerializer.NO_TIME, DoubleSerializer.toMicros(Double.POSITIVE_INFINITY));
+        Assert.assertEquals(DoubleSerializer.NO_TIME, DoubleSerializer.toMicros(1.0E20));
+    }
 }
@@ -48,7 +48,10 @@ public class HecConfigTest {
               .setTrustStorePassword("pass")
               .setHasCustomTrustStore(true)
               .setBackoffThresholdSeconds(10)
-              .setlbPollInterval(120);
+              .setlbPollInterval(120)
+              .setCompressionCodec("gzip")
+              .setCompressionLevel(1)
+              .setEnableAsyncSend(true);
 
         Assert.assertTrue(config.getDisableSSLCertVerification());
         Assert.assertTrue(config.getEnableChannelTracking());
@@ -66,5 +69,8 @@ public class HecConfigTest {
         Assert.assertEquals(10000, config.getBackoffThresholdSeconds());
         Assert.assertEquals(120000, config.getlbPollInterval());
         Assert.assertTrue(config.getHasCustomTrustStore());
+        Assert.assertEquals("gzip", config.getCompressionCodec());
+        Assert.assertEquals(1, config.getCompressionLevel());
+        Assert.assertTrue(config.getEnableAsyncSend());
     }
 }
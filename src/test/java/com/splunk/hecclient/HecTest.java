@@ -72,4 +72,34 @@ public class HecTest {
         hec.close();
         Assert.assertFalse(pm.isStarted());
     }
+
+    @Test
+    public void createWithAsyncSend() {
+        LoadBalancerMock lb = new LoadBalancerMock();
+        HecConfig config = UnitUtil.createHecConfig().setEnableAsyncSend(true);
+        PollerMock pm = new PollerMock();
+        Hec hec = new Hec(config, Hec.createHttpClient(config), pm, lb);
+        Assert.assertEquals(config.getTotalChannels(), lb.getChannels().size());
+        for (HecChannel channel : lb.getChannels()) {
+            Assert.assertTrue(channel.getIndexer() instanceof AsyncIndexer);
+        }
+        Assert.assertEquals(config.getTotalChannels() * config.getMaxHttpConnectionPerChannel(), hec.getAsyncSenderThreads());
+
+        hec.close();
+        Assert.assertFalse(pm.isStarted());
+    }
+
+    @Test
+    public void createWithAsyncSendThreads() {
+        LoadBalancerMock lb = new LoadBalancerMock();
+        HecConfig config = UnitUtil.createHecConfig().setEnableAsyncSend(true).setAsyncSendThreads(1);
+        PollerMock pm = new PollerMock();
+        Hec hec = new Hec(config, Hec.createHttpClient(config), pm, lb);
+        Assert.assertEquals(1, hec.getAsyncSenderThreads());
+        hec.close();
+
+        hec = new Hec(UnitUtil.createHecConfig(), Hec.createHttpClient(config), new PollerMock(), new LoadBalancerMock());
+        Assert.assertEquals(0, hec.getAsyncSenderThreads());
+        hec.close();
+    }
 }
@@ -16,9 +16,22 @@
 package com.splunk.hecclient;
 
 import com.splunk.kafka.connect.VersionUtils;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -162,6 +175,27 @@ public class IndexerTest {
         Assert.assertFalse(indexer.hasBackPressure());
     }
 
+    @Test
+    public void sendWithCircuitBreaker() {
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.INVALID_INDEX);
+        Indexer indexer = new Indexer(baseUrl, client, new PollerMock(), hecConfig);
+        CircuitBreaker breaker = new CircuitBreaker(baseUrl, 2, 0, TimeUnit.SECONDS.toNanos(30));
+        indexer.getChannel().getStats().setCircuitBreaker(breaker);
+
+        // the indexer rejecting the batches is working
+        for (int i = 0; i < 3; i++) {
+            Assert.assertFalse(indexer.send(UnitUtil.createBatch()));
+        }
+        Assert.assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+
+        client.setResponse(CloseableHttpClientMock.SERVER_BUSY);
+        Assert.assertFalse(indexer.send(UnitUtil.createBatch()));
+        client.setResponse(CloseableHttpClientMock.EXCEPTION);
+        Assert.assertFalse(indexer.send(UnitUtil.createBatch()));
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+
     @Test
     public void sendWithIOError() {
         CloseableHttpClientMock client = new CloseableHttpClientMock();
@@ -221,6 +255,48 @@ public class IndexerTest {
         }
     }
 
+    @Test
+    public void sendCompressedBatchWithCodecError() {
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        PollerMock poller = new PollerMock();
+        // the gzip codec throws on an invalid level, which the connector config would have rejected
+        HecConfig config = new HecConfig(Collections.emptyList(), token)
+                .setKerberosPrincipal("")
+                .setCompressionLevel(42);
+
+        Indexer indexer = new Indexer(baseUrl, client, poller, config);
+        EventBatch batch = UnitUtil.createBatch();
+        batch.setEnableCompression(true);
+        Assert.assertFalse(indexer.send(batch));
+        Assert.assertNull(poller.getBatch());
+        Assert.assertEquals(batch, poller.getFailedBatch());
+        Assert.assertTrue(poller.getException() instanceof HecException);
+        Assert.assertEquals(indexer.getChannel(), poller.getChannel());
+        Assert.assertEquals(0, indexer.getChannel().getStats().getInFlightRequests());
+        Assert.assertEquals(0, indexer.getChannel().getStats().getInFlightBytes());
+    }
+
+    @Test
+    public void closeWithKerberos() {
+        HecConfig config = new HecConfig(Collections.emptyList(), token)
+                .setKerberosPrincipal("kafka@EXAMPLE.COM")
+                .setKerberosKeytabPath("/tmp/indexer.keytab");
+        Indexer indexer = new Indexer(baseUrl, new CloseableHttpClientMock(), new PollerMock(), config);
+        indexer.close();
+        try {
+            indexer.executeHttpRequest(new HttpPost(baseUrl));
+            Assert.fail("a closed indexer must not log in");
+        } catch (HecException ex) {
+            Assert.assertTrue(ex.getCause().getMessage().contains("closed"));
+        }
+
+        // the closed indexer holds no reference on the shared login
+        KerberosLogin login = KerberosLogin.forConfig(config);
+        Assert.assertEquals(1, login.getReferences());
+        login.release();
+    }
+
     @Test
     public void sendCompressedRawBatchWithSuccess() {
         for (int i = 0; i < 2; i++) {
@@ -242,4 +318,57 @@ public class IndexerTest {
             Assert.assertEquals(CloseableHttpClientMock.SUCCESS, poller.getResponse());
         }
     }
+
+    @Test
+    public void sendConcurrently() throws InterruptedException {
+        final int inFlight = 4;
+        // every request is held until all of them are in flight at the same time
+        final CountDownLatch arrived = new CountDownLatch(inFlight);
+        CloseableHttpClientMock client = new CloseableHttpClientMock() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request,
+                    HttpContext context) throws IOException {
+                arrived.countDown();
+                try {
+                    if (!arrived.await(5, TimeUnit.SECONDS)) {
+                        throw new IOException("requests were not executed concurrently");
+                    }
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return super.doExecute(target, request, context);
+            }
+        };
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        PollerMock poller = new PollerMock() {
+            @Override
+            public void add(HecChannel channel, EventBatch batch, String resp) {
+                committed.incrementAndGet();
+            }
+
+            @Override
+            public void fail(HecChannel channel, EventBatch batch, Exception ex) {
+                failed.incrementAndGet();
+            }
+        };
+        final Indexer indexer = new Indexer(baseUrl, client, poller, hecConfig);
+
+        ExecutorService executor = Executors.newFixedThreadPool(inFlight);
+        final List<String> ackResponses = Collections.synchronizedList(new ArrayList<>());
+        // an ack poll runs alongside the data posts on the same channel
+        executor.execute(() -> ackResponses.add(indexer.executeHttpRequest(new HttpPost(baseUrl + "/services/collector/ack"))));
+        for (int i = 1; i < inFlight; i++) {
+            executor.execute(() -> indexer.send(UnitUtil.createBatch()));
+        }
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(inFlight - 1, committed.get());
+        Assert.assertEquals(0, failed.get());
+        Assert.assertEquals(Collections.singletonList(CloseableHttpClientMock.SUCCESS), ackResponses);
+        Assert.assertFalse(indexer.hasBackPressure());
+    }
 }
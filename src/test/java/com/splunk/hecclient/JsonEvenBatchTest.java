@@ -15,6 +15,7 @@
  */
 package com.splunk.hecclient;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.http.HttpEntity;
 import org.junit.Assert;
 import org.junit.Test;
@@ -23,6 +24,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -205,4 +208,200 @@ public class JsonEvenBatchTest {
             throw new HecException("failed to compress and decompress the data", ex);
         }
     }
+
+    @Test
+    public void getStreamingHttpEntity() {
+        EventBatch batch = new JsonEventBatch();
+        batch.setEnableStreaming(true);
+        Assert.assertTrue(batch.isEnableStreaming());
+
+        Event event = new JsonEvent("ni", "hao");
+        batch.add(event);
+        batch.add(new JsonEvent("hello", "world").setTime(1.5));
+        Assert.assertNull(event.bytes);
+        Assert.assertEquals(0, batch.length());
+
+        HttpEntity entity = batch.getHttpEntity();
+        Assert.assertTrue(entity.isRepeatable());
+        Assert.assertTrue(entity.isChunked());
+        Assert.assertEquals(-1, entity.getContentLength());
+
+        String expected = "{\"event\":\"ni\"}\n{\"time\":1.500000,\"event\":\"hello\"}\n";
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                entity.writeTo(out);
+            } catch (IOException ex) {
+                Assert.assertTrue("failed to write to stream", false);
+                throw new HecException("failed to write to stream", ex);
+            }
+            Assert.assertEquals(expected, out.toString());
+        }
+
+        byte[] data = new byte[1024];
+        int siz = readContent(entity, data);
+        Assert.assertEquals(expected, new String(data, 0, siz));
+        Assert.assertNull(event.bytes);
+    }
+
+    @Test
+    public void testGZIPCompressionForStreamingJsonEvent() {
+        EventBatch batch = new JsonEventBatch();
+        batch.setEnableCompression(true);
+        batch.setEnableStreaming(true);
+        Event event = new JsonEvent("hello world! hello world! hello world!", "hao");
+        batch.add(event);
+        HttpEntity entity = batch.getHttpEntityTemplate();
+        byte[] data = new byte[1024];
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            entity.writeTo(out);
+            String expected = "{\"event\":\"hello world! hello world! hello world!\"}\n";
+            GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+            int read = gis.read(data, 0, data.length);
+            gis.close();
+
+            Assert.assertEquals(expected, new String(data, 0, read, "UTF-8"));
+            Assert.assertNull(event.bytes);
+        } catch (IOException ex) {
+            Assert.assertTrue("failed to compress and decompress the data", false);
+            throw new HecException("failed to compress and decompress the data", ex);
+        }
+    }
+
+    @Test
+    public void testGZIPCompressionWithBigBatch() throws IOException {
+        EventBatch batch = new JsonEventBatch();
+        batch.setEnableCompression(true);
+        StringBuilder expected = new StringBuilder();
+        char[] data = new char[1000];
+        for (int i = 0; i < 200; i++) {
+            Arrays.fill(data, (char) ('a' + i % 26));
+            String event = new String(data);
+            batch.add(new JsonEvent(event, "hao"));
+            expected.append("{\"event\":\"").append(event).append("\"}\n");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batch.getHttpEntityTemplate().writeTo(out);
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = gis.read(buf)) > 0) {
+                uncompressed.write(buf, 0, read);
+            }
+        }
+        // the batch is bigger than the buffer gathering the events on their way to the codec
+        Assert.assertTrue(batch.length() > 64 * 1024);
+        Assert.assertEquals(expected.toString(), uncompressed.toString("UTF-8"));
+    }
+
+    @Test
+    public void compressOnce() throws IOException {
+        EventBatch batch = new JsonEventBatch();
+        batch.setEnableCompression(true);
+        batch.add(new JsonEvent("hello world! hello world! hello world!", "hao"));
+
+        HttpEntity entity = batch.getHttpEntityTemplate();
+        byte[] compressed = batch.getCompressedData();
+        Assert.assertEquals(compressed.length, entity.getContentLength());
+        Assert.assertEquals("gzip", entity.getContentEncoding().getValue());
+        Assert.assertTrue(entity.isRepeatable());
+
+        // resends reuse the same payload
+        Assert.assertSame(compressed, batch.getCompressedData());
+        Assert.assertEquals(compressed.length, batch.getHttpEntityTemplate().getContentLength());
+
+        // extra fields change the payload
+        Map<String, String> fields = new HashMap<>();
+        fields.put("hello", "world");
+        batch.addExtraFields(fields);
+        byte[] withFields = batch.getCompressedData();
+        Assert.assertNotSame(compressed, withFields);
+        GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(withFields));
+        byte[] data = new byte[1024];
+        int read = gis.read(data, 0, data.length);
+        gis.close();
+        Assert.assertTrue(new String(data, 0, read, "UTF-8").contains("\"hello\":\"world\""));
+
+        batch.commit();
+        Assert.assertNotSame(withFields, batch.getCompressedData());
+    }
+
+    @Test
+    public void channelField() throws IOException {
+        for (boolean streaming: new boolean[] {false, true}) {
+            Map<String, String> fields = new HashMap<>();
+            fields.put("ni", "hao");
+            byte[] formatted = "{\"event\":\"formatted\",\"fields\":{\"a\":\"b\"}}".getBytes("UTF-8");
+            byte[] bare = "[{\"event\":\"bare\"}]".getBytes("UTF-8");
+            Event[] events = {
+                    new JsonEvent("no fields", null),
+                    new JsonEvent("empty fields", null).setFields(new HashMap<>()),
+                    new JsonEvent("fields", null).setFields(fields),
+                    new JsonEvent("held", null).setFields(Collections.singletonMap("hec-channel", "mine")),
+                    new JsonEvent("template", null).setTemplate(new JsonEventTemplate("main", null, null, null, fields)),
+                    JsonEvent.fromFormatted(formatted, 0, formatted.length, null, null),
+                    JsonEvent.fromFormatted(formatted, 0, formatted.length, fields, null),
+                    JsonEvent.fromFormatted(bare, 1, bare.length - 2, null, null),
+                    JsonEvent.fromFormatted(bare, 1, bare.length - 2, fields, null),
+            };
+            EventBatch batch = new JsonEventBatch();
+            batch.setEnableStreaming(streaming);
+            for (Event event: events) {
+                batch.add(event);
+            }
+            if (!streaming) {
+                Assert.assertEquals(batch.length(), readEvents(batch.getHttpEntity()).length());
+            }
+            byte[][] bytes = new byte[events.length][];
+            for (int i = 0; i < events.length; i++) {
+                bytes[i] = events[i].getBytes();
+            }
+
+            for (String channel: new String[] {"first", "second"}) {
+                batch.setChannelField(new ChannelField(channel));
+                String written = readEvents(batch.getHttpEntity());
+                if (!streaming) {
+                    Assert.assertEquals(batch.length(), written.getBytes("UTF-8").length);
+                    Assert.assertEquals(written, readContent(batch.getHttpEntity()));
+                }
+
+                String[] lines = written.split("\n");
+                Assert.assertEquals(events.length, lines.length);
+                for (int i = 0; i < events.length; i++) {
+                    JsonNode got = Event.jsonMapper.readTree(lines[i]);
+                    Assert.assertEquals(channel, got.get("fields").get("hec-channel").asText());
+                    Assert.assertEquals(channel, events[i].getFields().get("hec-channel"));
+                    Assert.assertEquals(events[i].getEvent(), got.get("event").asText());
+                    for (Map.Entry<String, String> field: events[i].getFields().entrySet()) {
+                        Assert.assertEquals(field.getValue(), got.get("fields").get(field.getKey()).asText());
+                    }
+                    Assert.assertEquals(events[i].getFields().size(), got.get("fields").size());
+                    if (i != 3) {
+                        // moving to another channel does not serialize the events again
+                        Assert.assertSame(bytes[i], events[i].getBytes());
+                    }
+                }
+            }
+        }
+    }
+
+    private static String readEvents(final HttpEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toString("UTF-8");
+    }
+
+    private static String readContent(final HttpEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = entity.getContent()) {
+            byte[] buf = new byte[7];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toString("UTF-8");
+    }
 }
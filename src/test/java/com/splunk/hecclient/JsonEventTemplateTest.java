@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.apache.http.HttpEntity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JsonEventTemplateTest {
+    @Test
+    public void sameAsJackson() throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("ni", "hao");
+        fields.put("quote\"d", "line\nbreak \u00e9");
+        fields.put("empty", null);
+
+        JsonEventTemplate[] templates = {
+                new JsonEventTemplate("main", "source", "sourcetype", "host", fields),
+                new JsonEventTemplate("main", null, "", null, null),
+                new JsonEventTemplate(null, null, null, null, Collections.emptyMap()),
+                new JsonEventTemplate(null, "\"escaped\\\"", null, null, fields),
+        };
+        Object[] data = {"ni hao", Collections.singletonMap("hello", "world"), new RawValue("[1,2]"), 42};
+
+        for (JsonEventTemplate template: templates) {
+            for (Object value: data) {
+                JsonEvent event = new JsonEvent(value, null).setTemplate(template);
+                assertSameAsJackson(event);
+
+                event.setTime(1533071312.123456);
+                assertSameAsJackson(event);
+            }
+        }
+    }
+
+    @Test
+    public void setTemplate() {
+        Map<String, String> fields = Collections.singletonMap("ni", "hao");
+        JsonEventTemplate template = new JsonEventTemplate("index", "source", "sourcetype", "host", fields);
+
+        JsonEvent event = new JsonEvent("ni hao", null);
+        event.setTemplate(template);
+        Assert.assertEquals("index", event.getIndex());
+        Assert.assertEquals("source", event.getSource());
+        Assert.assertEquals("sourcetype", event.getSourcetype());
+        Assert.assertEquals("host", event.getHost());
+        Assert.assertSame(fields, event.getFields());
+        Assert.assertTrue(template.appliesTo(event));
+    }
+
+    @Test
+    public void changedAfterTemplate() throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("ni", "hao");
+        JsonEventTemplate template = new JsonEventTemplate("index", "source", "sourcetype", null, fields);
+
+        JsonEvent event = new JsonEvent("ni hao", null).setTemplate(template);
+        event.getBytes();
+        event.setIndex("other");
+        Assert.assertFalse(template.appliesTo(event));
+        assertSameAsJackson(event);
+        Assert.assertTrue(new String(event.getBytes(), StandardCharsets.UTF_8).contains("\"index\":\"other\""));
+
+        event = new JsonEvent("ni hao", null).setTemplate(template);
+        event.addFields(Collections.singletonMap("hello", "world"));
+        Assert.assertFalse(template.appliesTo(event));
+        assertSameAsJackson(event);
+        Assert.assertEquals(1, fields.size());
+    }
+
+    @Test
+    public void streaming() throws IOException {
+        JsonEventTemplate template = new JsonEventTemplate("index", null, "sourcetype", null,
+                Collections.singletonMap("ni", "hao"));
+        EventBatch batch = new JsonEventBatch();
+        batch.setEnableStreaming(true);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            JsonEvent event = new JsonEvent("event " + i, null).setTemplate(template);
+            event.setTime(i);
+            batch.add(event);
+            expected.append(Event.jsonMapper.writeValueAsString(event)).append('\n');
+        }
+
+        HttpEntity entity = batch.getHttpEntity();
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            entity.writeTo(out);
+            Assert.assertEquals(expected.toString(), out.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void tiedFields() throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("ni", "hao");
+        fields.put("offset", "overridden");
+        TiedField offset = TiedField.ofLong("offset", tied -> ((long[]) tied)[0]);
+        TiedField name = TiedField.of("name", tied -> "event-" + ((long[]) tied)[0]);
+
+        JsonEventTemplate[] templates = {
+                new JsonEventTemplate("main", null, null, null, fields, offset, name),
+                new JsonEventTemplate(null, null, null, null, null, offset),
+                new JsonEventTemplate(null, null, null, null, Collections.singletonMap("offset", "x"), name, offset),
+        };
+        for (JsonEventTemplate template: templates) {
+            for (long value: new long[] {0, 7, -12, Long.MAX_VALUE, Long.MIN_VALUE}) {
+                JsonEvent event = new JsonEvent("ni hao", new long[] {value}).setTemplate(template);
+                Assert.assertTrue(template.appliesTo(event));
+                Assert.assertEquals(String.valueOf(value), event.getFields().get("offset"));
+
+                // the tied fields are not in the order of a HashMap, compare the json trees
+                String expected = Event.jsonMapper.writeValueAsString(event);
+                JsonNode got = Event.jsonMapper.readTree(event.getBytes());
+                Assert.assertEquals(Event.jsonMapper.readTree(expected), got);
+                Assert.assertEquals(String.valueOf(value), got.get("fields").get("offset").asText());
+            }
+        }
+    }
+
+    @Test
+    public void addFieldsWithTiedFields() {
+        JsonEventTemplate template = new JsonEventTemplate(null, null, null, null,
+                Collections.singletonMap("ni", "hao"), TiedField.of("tied", tied -> (String) tied));
+        JsonEvent event = new JsonEvent("ni hao", "value").setTemplate(template);
+
+        Map<String, String> extra = new HashMap<>();
+        extra.put("hello", "world");
+        extra.put("tied", "lost");
+        event.addFields(extra);
+        Assert.assertFalse(template.appliesTo(event));
+        Map<String, String> fields = event.getFields();
+        Assert.assertEquals(3, fields.size());
+        Assert.assertEquals("hao", fields.get("ni"));
+        Assert.assertEquals("world", fields.get("hello"));
+        Assert.assertEquals("value", fields.get("tied"));
+        Assert.assertSame(fields, event.getFields());
+    }
+
+    private static void assertSameAsJackson(JsonEvent event) throws IOException {
+        String expected = Event.jsonMapper.writeValueAsString(event);
+        event.invalidate();
+        Assert.assertEquals(expected, new String(event.getBytes(), StandardCharsets.UTF_8));
+    }
+}
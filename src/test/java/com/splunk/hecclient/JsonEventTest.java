@@ -21,10 +21,15 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 public class JsonEventTest {
     static final ObjectMapper jsonMapper = new ObjectMapper();
@@ -89,6 +94,96 @@ public class JsonEventTest {
         Assert.assertEquals("world", fieldsGot.get("hello"));
     }
 
+    @Test
+    public void addFieldsToSharedFields() {
+        Map<String, String> shared = new HashMap<>();
+        shared.put("ni", "hao");
+
+        Event first = new JsonEvent("this is splunk event", null);
+        first.setFields(shared);
+        Event second = new JsonEvent("this is splunk event", null);
+        second.setFields(shared);
+        Assert.assertSame(shared, first.getFields());
+        Assert.assertSame(shared, second.getFields());
+
+        // adding fields copies the shared fields first
+        first.addFields(Collections.singletonMap("hello", "world"));
+        Assert.assertEquals(2, first.getFields().size());
+        Assert.assertEquals("hao", first.getFields().get("ni"));
+        Assert.assertEquals("world", first.getFields().get("hello"));
+        Assert.assertEquals(1, shared.size());
+        Assert.assertSame(shared, second.getFields());
+
+        // the copy is owned by the event from then on
+        Map<String, String> owned = first.getFields();
+        first.addFields(Collections.singletonMap("foo", "bar"));
+        Assert.assertSame(owned, first.getFields());
+        Assert.assertEquals(3, owned.size());
+    }
+
+    @Test
+    public void setTimeMillis() {
+        Event event = new JsonEvent("this is splunk event", null);
+        event.setTimeMillis(1533071312123L);
+        Assert.assertEquals(1533071312.123, event.getTime(), 0);
+        Assert.assertTrue(event.toString(), event.toString().startsWith("{\"time\":1533071312.123000,"));
+
+        event.setTimeMillis(-1L);
+        Assert.assertEquals(-0.001, event.getTime(), 0);
+    }
+
+    @Test
+    public void setTimeMillisOutOfRange() {
+        Event event = new JsonEvent("this is splunk event", null).setTimeMillis(Long.MAX_VALUE / 100);
+        Assert.assertEquals(Long.MAX_VALUE / 100 / 1000.0, event.getTime(), 0);
+        Assert.assertTrue(event.toString(), event.toString().startsWith("{\"time\":92233720368547.770000,"));
+    }
+
+    @Test
+    public void setTimeSameAsDouble() throws IOException {
+        // milliseconds put in time, times beyond the microseconds of a long, and times which do not convert back from
+        // their microseconds
+        double[] times = {1682016162298.0, 99014459062.319, 4294967296.5, 9.3e12, 1.0e20, -1.0e19, 1533071312.123456,
+                Double.MAX_VALUE};
+        JsonEventTemplate template = new JsonEventTemplate("main", null, null, null, null);
+        Random random = new Random(42);
+        List<Double> values = new ArrayList<>();
+        for (double time : times) {
+            values.add(time);
+        }
+        for (int i = 0; i < 10000; i++) {
+            values.add(Math.scalb(random.nextDouble(), 32 + random.nextInt(12)));
+            values.add((double) (random.nextLong() % 10_000_000_000_000L));
+        }
+
+        for (double time : values) {
+            String expected = "{\"time\":" + BigDecimal.valueOf(time)
+                    .setScale(6, RoundingMode.HALF_UP).toPlainString() + ",";
+            JsonEvent event = new JsonEvent("ni hao", null);
+            event.setTime(time);
+            Assert.assertEquals(time, event.getTime(), 0);
+            Assert.assertTrue(expected, new String(event.getBytes(), StandardCharsets.UTF_8).startsWith(expected));
+
+            event = new JsonEvent("ni hao", null).setTemplate(template);
+            event.setTime(time);
+            Assert.assertTrue(expected, new String(event.getBytes(), StandardCharsets.UTF_8).startsWith(expected));
+
+            byte[] formatted = ("{\"time\":" + time + ",\"event\":\"ni hao\"}").getBytes(StandardCharsets.UTF_8);
+            event = JsonEvent.fromFormatted(formatted, 0, formatted.length, null, null);
+            Assert.assertNotNull(event);
+            Assert.assertEquals(time, event.getTime(), 0);
+        }
+
+        // epoch milliseconds give the same times as through a double
+        for (int i = 0; i < 10000; i++) {
+            long millis = random.nextLong() % 5_000_000_000_000L;
+            Event event = new JsonEvent("ni hao", null).setTimeMillis(millis);
+            Event expected = new JsonEvent("ni hao", null).setTime(millis / 1000.0);
+            Assert.assertEquals(expected.getTime(), event.getTime());
+            Assert.assertArrayEquals(expected.getBytes(), event.getBytes());
+        }
+    }
+
     @Test
     public void toStr() {
         SerialAndDeserial sad = new SerialAndDeserial() {
@@ -195,6 +290,93 @@ public class JsonEventTest {
         Assert.assertEquals("hao", got.get("ni"));
     }
 
+    @Test
+    public void validateWithoutCaching() {
+        Event event = new JsonEvent("hello", "world");
+        event.validateWithoutCaching();
+        Assert.assertNull(event.bytes);
+
+        event.validate();
+        Assert.assertNotNull(event.bytes);
+    }
+
+    @Test(expected = HecException.class)
+    public void validateWithoutCachingInvalidEvent() {
+        Event event = new JsonEvent(new Object(), null);
+        event.validateWithoutCaching();
+    }
+
+    @Test
+    public void fromFormatted() throws IOException {
+        String formatted = "{\"time\":1.5,\"event\":{\"a\":[1,2]},\"host\":\"h\",\"fields\":{\"ni\":\"hao\"}}";
+        byte[] bytes = formatted.getBytes(StandardCharsets.UTF_8);
+
+        // without extra fields, the bytes are forwarded as they are
+        Event event = JsonEvent.fromFormatted(bytes, 0, bytes.length, null, "tied");
+        Assert.assertNotNull(event);
+        Assert.assertSame(bytes, event.getBytes());
+        Assert.assertEquals("tied", event.getTied());
+        Assert.assertEquals(new Double(1.5), event.getTime());
+        Assert.assertEquals("h", event.getHost());
+        Assert.assertEquals("hao", event.getFields().get("ni"));
+
+        // extra fields are spliced into the existing fields
+        Map<String, String> extra = new HashMap<>();
+        extra.put("hello", "world");
+        byte[] padded = ("  " + formatted + "  ").getBytes(StandardCharsets.UTF_8);
+        event = JsonEvent.fromFormatted(padded, 2, bytes.length, extra, null);
+        Assert.assertNotNull(event);
+        Assert.assertEquals("{\"time\":1.5,\"event\":{\"a\":[1,2]},\"host\":\"h\",\"fields\":{\"ni\":\"hao\",\"hello\":\"world\"}}",
+                new String(event.getBytes(), StandardCharsets.UTF_8));
+        Assert.assertEquals(2, event.getFields().size());
+
+        // the event stays usable once it is modified
+        event.setIndex("main");
+        JsonEvent got = jsonMapper.readValue(event.getBytes(), JsonEvent.class);
+        Assert.assertEquals("main", got.getIndex());
+        Assert.assertEquals("world", got.getFields().get("hello"));
+        Assert.assertEquals(jsonMapper.readTree("{\"a\":[1,2]}"), jsonMapper.valueToTree(got.getEvent()));
+
+        // extra fields are added when the event has no fields yet, or an empty fields object
+        String[][] cases = {
+                {"{\"event\":\"e\"}", "{\"event\":\"e\",\"fields\":{\"hello\":\"world\"}}"},
+                {"{\"event\":7,\"fields\":{ }}", "{\"event\":7,\"fields\":{ \"hello\":\"world\"}}"},
+        };
+        for (String[] c: cases) {
+            byte[] data = c[0].getBytes(StandardCharsets.UTF_8);
+            event = JsonEvent.fromFormatted(data, 0, data.length, extra, null);
+            Assert.assertNotNull(c[0], event);
+            Assert.assertEquals(c[1], new String(event.getBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void fromFormattedRejected() {
+        Map<String, String> extra = new HashMap<>();
+        extra.put("ni", "world");
+
+        String[] rejected = {
+                "",
+                "[1]",
+                "{\"host\":\"h\"}",
+                "{\"event\":\"\"}",
+                "{\"event\":null}",
+                "{\"event\":\"e\",\"event\":\"e\"}",
+                "{\"event\":\"e\",\"time\":\"1\"}",
+                "{\"event\":\"e\",\"index\":1}",
+                "{\"event\":\"e\",\"unknown\":\"u\"}",
+                "{\"event\":\"e\",\"fields\":{\"a\":1}}",
+                "{\"event\":\"e\"} {}",
+                "{\"event\":\"e\"",
+                // an extra field would overwrite a field of the event
+                "{\"event\":\"e\",\"fields\":{\"ni\":\"hao\"}}",
+        };
+        for (String r: rejected) {
+            byte[] data = r.getBytes(StandardCharsets.UTF_8);
+            Assert.assertNull(r, JsonEvent.fromFormatted(data, 0, data.length, extra, null));
+        }
+    }
+
     private interface SerialAndDeserial {
         Event serializeAndDeserialize(final Event event);
     }
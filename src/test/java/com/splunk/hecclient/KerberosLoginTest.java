@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.hecclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.LoginException;
+
+public class KerberosLoginTest {
+    private static final String principal = "kafka@EXAMPLE.COM";
+
+    @Test
+    public void loginOnce() throws LoginException {
+        AtomicInteger logins = new AtomicInteger();
+        KerberosLogin login = new KerberosLogin(() -> {
+            logins.incrementAndGet();
+            return createSubject(System.currentTimeMillis() + 10 * 60 * 60 * 1000);
+        });
+
+        Subject subject = login.getSubject();
+        Assert.assertNotNull(subject);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(subject, login.getSubject());
+        }
+        Assert.assertEquals(1, logins.get());
+        Assert.assertEquals(1, login.getLoginCount());
+        Assert.assertEquals(0, login.getRefreshCount());
+        Assert.assertEquals(0, login.getFailedLoginCount());
+        Assert.assertTrue(login.getLastLoginLatency() >= 0);
+        Assert.assertTrue(login.getTotalLoginLatency() >= login.getLastLoginLatency());
+        login.close();
+    }
+
+    @Test
+    public void loginAgainWhenExpired() throws LoginException {
+        KerberosLogin login = new KerberosLogin(() -> createSubject(System.currentTimeMillis() - 1000));
+
+        Subject first = login.getSubject();
+        Subject second = login.getSubject();
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, login.getLoginCount());
+        login.close();
+    }
+
+    @Test
+    public void refresh() throws LoginException {
+        KerberosLogin login = new KerberosLogin(() -> createSubject(System.currentTimeMillis() + 10 * 60 * 60 * 1000));
+
+        Subject first = login.getSubject();
+        login.refresh();
+        Subject refreshed = login.getSubject();
+        Assert.assertNotSame(first, refreshed);
+        Assert.assertEquals(2, login.getLoginCount());
+        Assert.assertEquals(1, login.getRefreshCount());
+        Assert.assertEquals(1, login.getScheduledRefreshes());
+        login.close();
+        Assert.assertEquals(0, login.getScheduledRefreshes());
+    }
+
+    @Test
+    public void refreshWithFailure() throws LoginException {
+        AtomicInteger logins = new AtomicInteger();
+        KerberosLogin login = new KerberosLogin(() -> {
+            if (logins.incrementAndGet() > 1) {
+                throw new LoginException("mocked up");
+            }
+            return createSubject(System.currentTimeMillis() + 10 * 60 * 60 * 1000);
+        });
+
+        Subject subject = login.getSubject();
+        login.refresh();
+        // the current ticket is kept until it expires
+        Assert.assertSame(subject, login.getSubject());
+        Assert.assertEquals(1, login.getLoginCount());
+        Assert.assertEquals(0, login.getRefreshCount());
+        Assert.assertEquals(1, login.getFailedLoginCount());
+        // the retry replaces the refresh scheduled by the login
+        Assert.assertEquals(1, login.getScheduledRefreshes());
+        login.refresh();
+        Assert.assertEquals(1, login.getScheduledRefreshes());
+        login.close();
+    }
+
+    @Test(expected = LoginException.class)
+    public void loginWithFailure() throws LoginException {
+        KerberosLogin login = new KerberosLogin(() -> {
+            throw new LoginException("mocked up");
+        });
+        try {
+            login.getSubject();
+        } finally {
+            Assert.assertEquals(0, login.getLoginCount());
+            Assert.assertEquals(1, login.getFailedLoginCount());
+            login.close();
+        }
+    }
+
+    @Test
+    public void findTgt() {
+        Subject subject = createSubject(System.currentTimeMillis());
+        KerberosTicket tgt = KerberosLogin.findTgt(subject);
+        Assert.assertNotNull(tgt);
+        Assert.assertEquals("krbtgt/EXAMPLE.COM@EXAMPLE.COM", tgt.getServer().getName());
+
+        Assert.assertNull(KerberosLogin.findTgt(new Subject()));
+    }
+
+    @Test
+    public void forConfig() {
+        HecConfig config = new HecConfig(Collections.emptyList(), "token")
+            .setKerberosPrincipal(principal)
+            .setKerberosKeytabPath("/tmp/kafka.keytab");
+        KerberosLogin login = KerberosLogin.forConfig(config);
+        Assert.assertSame(login, KerberosLogin.forConfig(config));
+        Assert.assertEquals(2, login.getReferences());
+
+        HecConfig other = new HecConfig(Collections.emptyList(), "token")
+            .setKerberosPrincipal(principal)
+            .setKerberosKeytabPath("/tmp/other.keytab");
+        KerberosLogin otherLogin = KerberosLogin.forConfig(other);
+        Assert.assertNotSame(login, otherLogin);
+        otherLogin.release();
+
+        login.release();
+        Assert.assertSame(login, KerberosLogin.forConfig(config));
+        login.release();
+        login.release();
+        Assert.assertEquals(0, login.getReferences());
+        // the last release drops the login from the cache
+        KerberosLogin fresh = KerberosLogin.forConfig(config);
+        Assert.assertNotSame(login, fresh);
+        fresh.release();
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        HecConfig config = new HecConfig(Collections.emptyList(), "token")
+            .setKerberosPrincipal(principal)
+            .setKerberosKeytabPath("/tmp/metrics.keytab");
+        ObjectName name = new ObjectName("com.splunk.hecclient:type=KerberosLogin,principal="
+            + ObjectName.quote(principal) + ",keytab=" + ObjectName.quote("/tmp/metrics.keytab"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        KerberosLogin login = KerberosLogin.forConfig(config);
+        Assert.assertEquals(0L, server.getAttribute(name, "LoginCount"));
+        Assert.assertEquals(0L, server.getAttribute(name, "FailedLoginCount"));
+        login.release();
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    private static Subject createSubject(long endTime) {
+        KerberosTicket tgt = new KerberosTicket(new byte[] {1}, new KerberosPrincipal(principal),
+                new KerberosPrincipal("krbtgt/EXAMPLE.COM@EXAMPLE.COM"), new byte[] {1}, 1, null,
+                new Date(endTime - 1000), new Date(endTime - 1000), new Date(endTime), null, null);
+        HashSet<Object> credentials = new HashSet<>();
+        credentials.add(tgt);
+        return new Subject(false, new HashSet<>(), new HashSet<>(), credentials);
+    }
+}
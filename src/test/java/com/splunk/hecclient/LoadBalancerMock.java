@@ -22,10 +22,12 @@ import java.util.List;
 
 public class LoadBalancerMock implements LoadBalancerInf {
     private List<EventBatch> batches = new ArrayList<>();
+    private List<HecChannel> channels = new ArrayList<>();
     private boolean throwOnSend = false;
 
     @Override
     public void add(String indexerUrl, HecChannel channel) {
+        channels.add(channel);
     }
 
     public void remove(HecChannel channel) {
@@ -58,4 +60,8 @@ public class LoadBalancerMock implements LoadBalancerInf {
     public List<EventBatch> getBatches() {
         return batches;
     }
+
+    public List<HecChannel> getChannels() {
+        return channels;
+    }
 }
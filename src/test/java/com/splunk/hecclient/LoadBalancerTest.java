@@ -15,12 +15,32 @@
  */
 package com.splunk.hecclient;
 
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LoadBalancerTest {
     @Test
@@ -198,4 +218,505 @@ public class LoadBalancerTest {
         LoadBalancer lb = new LoadBalancer(config, client);
         Assert.assertEquals(0, lb.size());
     }
+
+    @Test
+    public void sendWeighted() {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken").setLbPolicy(ChannelSelectors.WEIGHTED);
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        List<IndexerMock> indexers = new ArrayList<>();
+
+        long[] latencies = {2_000_000, 200_000_000, 2_000_000};
+        for (long latency: latencies) {
+            IndexerMock indexer = new IndexerMock();
+            indexers.add(indexer);
+            HecChannel ch = new HecChannel(indexer);
+            ch.getStats().recordLatency(latency);
+            lb.add(uri, ch);
+        }
+        indexers.get(2).setBackPressure(true);
+
+        int numberOfBatches = 1000;
+        for (int i = 0; i < numberOfBatches; i++) {
+            lb.send(UnitUtil.createBatch());
+        }
+
+        // the slow indexer gets about 1% of the batches
+        Assert.assertTrue(indexers.get(0).getBatches().size() > 900);
+        Assert.assertEquals(numberOfBatches - indexers.get(0).getBatches().size(), indexers.get(1).getBatches().size());
+        Assert.assertEquals(0, indexers.get(2).getBatches().size());
+    }
+
+    @Test
+    public void sendLeastOutstanding() {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken").setLbPolicy(ChannelSelectors.LEAST_OUTSTANDING);
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        List<IndexerMock> indexers = new ArrayList<>();
+        List<HecChannel> channels = new ArrayList<>();
+
+        int numberOfChannels = 3;
+        for (int i = 0; i < numberOfChannels; i++) {
+            IndexerMock indexer = new IndexerMock();
+            indexers.add(indexer);
+            HecChannel ch = new HecChannel(indexer);
+            channels.add(ch);
+            lb.add(uri, ch);
+        }
+        channels.get(0).getStats().postStarted(1024);
+
+        int numberOfBatches = 12;
+        for (int i = 0; i < numberOfBatches; i++) {
+            lb.send(UnitUtil.createBatch());
+        }
+
+        // ties between the idle channels are spread
+        Assert.assertEquals(0, indexers.get(0).getBatches().size());
+        Assert.assertTrue(indexers.get(1).getBatches().size() >= 4);
+        Assert.assertTrue(indexers.get(2).getBatches().size() >= 4);
+
+        channels.get(0).getStats().postFinished(1024);
+        channels.get(1).getStats().postStarted(10);
+        channels.get(2).getStats().postStarted(10);
+        lb.send(UnitUtil.createBatch());
+        Assert.assertEquals(1, indexers.get(0).getBatches().size());
+    }
+
+    @Test
+    public void sendConcurrently() throws Exception {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken");
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        List<AtomicInteger> sent = new ArrayList<>();
+
+        int numberOfChannels = 4;
+        for (int i = 0; i < numberOfChannels; i++) {
+            AtomicInteger counter = new AtomicInteger();
+            sent.add(counter);
+            lb.add(uri, new HecChannel(new IndexerInf() {
+                @Override
+                public boolean send(final EventBatch batch) {
+                    counter.incrementAndGet();
+                    return true;
+                }
+
+                @Override
+                public String executeHttpRequest(final HttpUriRequest req) {
+                    return null;
+                }
+
+                @Override
+                public boolean hasBackPressure() {
+                    return false;
+                }
+
+                @Override
+                public String getBaseUrl() {
+                    return uri;
+                }
+
+                @Override
+                public Header[] getHeaders() {
+                    return null;
+                }
+            }));
+        }
+
+        // 32 threads picking channels at once, none of them waits for a lock
+        int numberOfThreads = 32;
+        int batchesPerThread = 1000;
+        EventBatch batch = UnitUtil.createBatch();
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numberOfThreads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < batchesPerThread; j++) {
+                    lb.send(batch);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future: futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (AtomicInteger counter: sent) {
+            Assert.assertEquals(numberOfThreads * batchesPerThread / numberOfChannels, counter.get());
+        }
+    }
+
+    @Test
+    public void sendPowerOfTwoChoices() {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken")
+                .setLbPolicy(ChannelSelectors.POWER_OF_TWO_CHOICES);
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        List<IndexerMock> indexers = new ArrayList<>();
+        List<HecChannel> channels = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            IndexerMock indexer = new IndexerMock();
+            indexers.add(indexer);
+            HecChannel ch = new HecChannel(indexer);
+            ch.getStats().recordLatency(1_000_000);
+            channels.add(ch);
+            lb.add(uri, ch);
+        }
+        // acks which do not come make the channel as slow as the ack it waits for
+        channels.get(1).getStats().recordPendingAck(1_000_000_000);
+
+        for (int i = 0; i < 10; i++) {
+            lb.send(UnitUtil.createBatch());
+        }
+        Assert.assertEquals(10, indexers.get(0).getBatches().size());
+
+        // the other channel is taken when the first one can't take the batch
+        indexers.get(0).setBackPressure(true);
+        lb.send(UnitUtil.createBatch());
+        Assert.assertEquals(1, indexers.get(1).getBatches().size());
+    }
+
+    @Test
+    public void sendPowerOfTwoChoicesWithSlowIndexer() throws Exception {
+        AtomicInteger fastPosts = new AtomicInteger();
+        AtomicInteger slowPosts = new AtomicInteger();
+        HttpServer fast = startHecServer(fastPosts, 0);
+        HttpServer slow = startHecServer(slowPosts, 250);
+        try {
+            String fastUri = "http://127.0.0.1:" + fast.getAddress().getPort();
+            String slowUri = "http://127.0.0.1:" + slow.getAddress().getPort();
+            HecConfig config = new HecConfig(Arrays.asList(fastUri, slowUri), "mytoken")
+                    .setLbPolicy(ChannelSelectors.POWER_OF_TWO_CHOICES)
+                    .setKerberosPrincipal("");
+            CloseableHttpClient client = Hec.createHttpClient(config);
+            LoadBalancer lb = new LoadBalancer(config, client);
+            PollerMock poller = new PollerMock();
+            lb.add(fastUri, new Indexer(fastUri, client, poller, config).getChannel());
+            lb.add(slowUri, new Indexer(slowUri, client, poller, config).getChannel());
+
+            int numberOfBatches = 50;
+            for (int i = 0; i < numberOfBatches; i++) {
+                lb.send(UnitUtil.createBatch());
+            }
+            lb.close();
+            client.close();
+
+            // the slow indexer is left aside after its first answers
+            Assert.assertEquals(numberOfBatches, fastPosts.get() + slowPosts.get());
+            Assert.assertTrue("slow indexer got " + slowPosts.get() + " batches", slowPosts.get() <= 5);
+        } finally {
+            fast.stop(0);
+            slow.stop(0);
+        }
+    }
+
+    @Test
+    public void sendWithRateControl() throws Exception {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken").setEnableRateControl(true)
+                .setMaxHttpConnectionPerChannel(1)
+                .setSocketTimeout(1);
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        List<IndexerMock> indexers = new ArrayList<>();
+        List<HecChannel> channels = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            IndexerMock indexer = new IndexerMock();
+            indexers.add(indexer);
+            HecChannel ch = new HecChannel(indexer);
+            channels.add(ch);
+            lb.add(uri, ch);
+        }
+        HecChannel other = new HecChannel(new IndexerMock());
+        lb.add("https://other:8088", other);
+        // the channels of an indexer share its limits
+        AimdLimiter limiter = channels.get(0).getStats().getLimiter();
+        Assert.assertSame(limiter, channels.get(1).getStats().getLimiter());
+        Assert.assertNotSame(limiter, other.getStats().getLimiter());
+        Assert.assertEquals(2, limiter.getConcurrency());
+        channels.get(0).getStats().congested();
+        Assert.assertEquals(1, limiter.getConcurrency());
+        lb.remove(other);
+
+        // back pressure narrows the limits instead of taking the channel out
+        indexers.get(0).setBackPressure(true);
+        lb.send(UnitUtil.createBatch());
+        Assert.assertEquals(1, indexers.get(0).getBatches().size() + indexers.get(1).getBatches().size());
+
+        // the indexer is at its limits, the batch waits for a POST to finish
+        channels.get(1).getStats().postStarted(100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> sent = executor.submit(() -> lb.send(UnitUtil.createBatch()));
+        Thread.sleep(200);
+        Assert.assertFalse(sent.isDone());
+        channels.get(1).getStats().postFinished(100);
+        sent.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, indexers.get(0).getBatches().size() + indexers.get(1).getBatches().size());
+
+        // and gives up after the socket timeout
+        channels.get(1).getStats().postStarted(100);
+        try {
+            executor.submit(() -> lb.send(UnitUtil.createBatch())).get(5, TimeUnit.SECONDS);
+            Assert.fail("batch should not be sent");
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof HecException);
+        } finally {
+            executor.shutdown();
+        }
+
+        // the next batches fail right away, until a POST finishes
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            try {
+                lb.send(UnitUtil.createBatch());
+                Assert.fail("batch should not be sent");
+            } catch (HecException ex) {
+                // expected
+            }
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        channels.get(1).getStats().postFinished(100);
+        lb.send(UnitUtil.createBatch());
+        Assert.assertEquals(3, indexers.get(0).getBatches().size() + indexers.get(1).getBatches().size());
+    }
+
+    @Test
+    public void sendWithRateControlAndOpenBreakers() {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken").setEnableRateControl(true)
+                .setCircuitBreakerFailures(1)
+                .setSocketTimeout(60);
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        HecChannel channel = new HecChannel(new IndexerMock());
+        lb.add(uri, channel);
+        channel.getStats().postFailed(UnitUtil.createBatch(), new HecException("mocked up"));
+
+        // no POST finishing opens a breaker, so the batch doesn't wait for one
+        long start = System.nanoTime();
+        try {
+            lb.send(UnitUtil.createBatch());
+            Assert.fail("batch should not be sent");
+        } catch (HecException ex) {
+            // expected
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test
+    public void sendWithCircuitBreaker() throws Exception {
+        String uri = "https://dummy:8088";
+        HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken")
+                .setCircuitBreakerFailures(2)
+                .setCircuitBreakerOpenSeconds(1);
+        CloseableHttpClientMock client = new CloseableHttpClientMock();
+        client.setResponse(CloseableHttpClientMock.SUCCESS);
+        LoadBalancer lb = new LoadBalancer(config, client);
+        IndexerMock dead = new IndexerMock();
+        IndexerMock alive = new IndexerMock();
+        HecChannel deadChannel = new HecChannel(dead);
+        lb.add("https://dead:8088", deadChannel);
+        lb.add(uri, new HecChannel(alive));
+
+        HecException failure = new HecException("mocked up");
+        deadChannel.getStats().postFailed(UnitUtil.createBatch(), failure);
+        deadChannel.getStats().postFailed(UnitUtil.createBatch(), failure);
+        for (int i = 0; i < 10; i++) {
+            lb.send(UnitUtil.createBatch());
+        }
+        Assert.assertEquals(0, dead.getBatches().size());
+        Assert.assertEquals(10, alive.getBatches().size());
+
+        // once half-open, a single probe batch goes to the indexer until it reports back
+        Thread.sleep(1100);
+        for (int i = 0; i < 10; i++) {
+            lb.send(UnitUtil.createBatch());
+        }
+        Assert.assertEquals(1, dead.getBatches().size());
+
+        deadChannel.getStats().postSucceeded(dead.getBatches().get(0), 0, 1000);
+        for (int i = 0; i < 10; i++) {
+            lb.send(UnitUtil.createBatch());
+        }
+        Assert.assertEquals(6, dead.getBatches().size());
+    }
+
+    @Test
+    public void checkHealthConcurrently() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        HttpServer healthy = startHealthServer(new CountDownLatch(0));
+        HttpServer blackHoled = startHealthServer(released);
+        try {
+            String healthyUri = "http://127.0.0.1:" + healthy.getAddress().getPort();
+            String blackHoledUri = "http://127.0.0.1:" + blackHoled.getAddress().getPort();
+            HecConfig config = new HecConfig(Arrays.asList(healthyUri, blackHoledUri), "mytoken")
+                    .setlbPollInterval(-1)
+                    .setSocketTimeout(60)
+                    .setHealthCheckTimeout(1)
+                    .setKerberosPrincipal("");
+            CloseableHttpClient client = Hec.createHttpClient(config);
+            LoadBalancer lb = new LoadBalancer(config, client);
+            for (String uri : Arrays.asList(healthyUri, blackHoledUri, blackHoledUri)) {
+                lb.add(uri, new HecChannel(new IndexerMock()));
+            }
+
+            // the indexer which does not answer is given up after the health check timeout, not the socket timeout
+            long start = System.nanoTime();
+            lb.checkHealth();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assert.assertTrue("health check took " + elapsed + "ms", elapsed < 3000);
+            Assert.assertEquals(1, lb.size());
+
+            IndexerHealth healthyIndexer = lb.getIndexerHealth(healthyUri);
+            IndexerHealth blackHoledIndexer = lb.getIndexerHealth(blackHoledUri);
+            Assert.assertTrue(healthyIndexer.isHealthy());
+            Assert.assertFalse(blackHoledIndexer.isHealthy());
+            Assert.assertTrue(healthyIndexer.getProbeLatencyNanos() > 0);
+            Assert.assertTrue(blackHoledIndexer.getProbeLatencyMillis() >= 900);
+
+            // the probe latencies are exported over JMX
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName pattern = new ObjectName("com.splunk.hecclient:type=IndexerHealth,indexer="
+                    + ObjectName.quote(blackHoledUri) + ",*");
+            Assert.assertEquals(1, server.queryNames(pattern, null).size());
+            ObjectName name = server.queryNames(pattern, null).iterator().next();
+            Assert.assertEquals(Boolean.FALSE, server.getAttribute(name, "Healthy"));
+            Assert.assertEquals(blackHoledIndexer.getProbeLatencyMillis(), server.getAttribute(name, "ProbeLatencyMillis"));
+
+            // both channels of the indexer are back once it answers
+            released.countDown();
+            lb.checkHealth();
+            Assert.assertEquals(3, lb.size());
+            Assert.assertTrue(blackHoledIndexer.isHealthy());
+
+            lb.close();
+            client.close();
+            Assert.assertTrue(server.queryNames(pattern, null).isEmpty());
+        } finally {
+            released.countDown();
+            healthy.stop(0);
+            blackHoled.stop(0);
+        }
+    }
+
+    @Test
+    public void checkHealthWithBusyPool() throws Exception {
+        CountDownLatch posting = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        HttpServer server = startHealthServer(new CountDownLatch(0));
+        server.createContext("/services/collector/event", exchange -> {
+            posting.countDown();
+            try {
+                released.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        ExecutorService poster = Executors.newSingleThreadExecutor();
+        try {
+            String uri = "http://127.0.0.1:" + server.getAddress().getPort();
+            HecConfig config = new HecConfig(Arrays.asList(uri), "mytoken")
+                    .setlbPollInterval(-1)
+                    .setHealthCheckTimeout(1)
+                    .setKerberosPrincipal("");
+            CloseableHttpClient client = new HttpClientBuilder()
+                    .setMaxConnectionPoolSizePerDestination(1)
+                    .setMaxConnectionPoolSize(1)
+                    .build();
+            LoadBalancer lb = new LoadBalancer(config, client);
+            lb.add(uri, new HecChannel(new IndexerMock()));
+
+            // a slow post holds the only connection to the indexer
+            Future<?> post = poster.submit(() -> {
+                client.execute(new HttpPost(uri + "/services/collector/event")).close();
+                return null;
+            });
+            Assert.assertTrue(posting.await(5, TimeUnit.SECONDS));
+
+            // the health check gets no connection, which leaves the indexer in the load balancer
+            lb.checkHealth();
+            Assert.assertEquals(1, lb.size());
+            IndexerHealth indexerHealth = lb.getIndexerHealth(uri);
+            Assert.assertTrue(indexerHealth.isHealthy());
+            Assert.assertEquals(0, indexerHealth.getProbeLatencyNanos());
+
+            released.countDown();
+            post.get(5, TimeUnit.SECONDS);
+            lb.checkHealth();
+            Assert.assertEquals(1, lb.size());
+            Assert.assertTrue(indexerHealth.getProbeLatencyNanos() > 0);
+
+            lb.close();
+            client.close();
+        } finally {
+            released.countDown();
+            poster.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    // a HEC health endpoint answering once released
+    private static HttpServer startHealthServer(final CountDownLatch released) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/services/collector/health", exchange -> {
+            try {
+                released.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"text\":\"HEC is healthy\",\"code\":17}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    // a HEC endpoint answering every request with success, after delayMillis for the posted events
+    private static HttpServer startHecServer(final AtomicInteger posts, final long delayMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // drain the request
+                }
+            }
+            if (exchange.getRequestURI().getPath().startsWith("/services/collector/event")) {
+                posts.incrementAndGet();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{\"text\":\"Success\",\"code\":0}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
 }
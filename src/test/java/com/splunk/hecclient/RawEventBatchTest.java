@@ -22,7 +22,11 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 public class RawEventBatchTest {
@@ -154,4 +158,65 @@ public class RawEventBatchTest {
             throw new HecException("failed to compress and decompress the data", ex);
         }
     }
+
+    @Test
+    public void getStreamingHttpEntity() {
+        EventBatch batch = RawEventBatch.factory().build();
+        batch.setEnableStreaming(true);
+
+        RawEvent stringEvent = new RawEvent("ni", null);
+        stringEvent.setLineBreaker("####");
+        batch.add(stringEvent);
+        batch.add(new RawEvent("hao".getBytes(), null));
+        Map<String, String> m = new HashMap<>();
+        m.put("hello", "world");
+        batch.add(new RawEvent(m, null));
+        batch.add(new RawEvent("done", null));
+
+        HttpEntity entity = batch.getHttpEntity();
+        Assert.assertEquals(-1, entity.getContentLength());
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            entity.writeTo(out);
+            Assert.assertEquals("ni####hao{\"hello\":\"world\"}done", out.toString());
+        } catch (IOException ex) {
+            Assert.assertTrue("failed to write to stream", false);
+            throw new HecException("failed to write to stream", ex);
+        }
+        Assert.assertNull(stringEvent.bytes);
+    }
+
+    @Test
+    public void getContent() throws IOException {
+        EventBatch batch = RawEventBatch.factory().build();
+        RawEvent first = new RawEvent("ni", null);
+        first.setLineBreaker("####");
+        batch.add(first);
+        batch.add(new RawEvent(new byte[0], null));
+        batch.add(new RawEvent(ByteBuffer.wrap("hao".getBytes()), null));
+        RawEvent last = new RawEvent("hello world", null);
+        last.setLineBreaker("\n");
+        batch.add(last);
+
+        String expected = "ni####haohello world\n";
+        HttpEntity entity = batch.getHttpEntity();
+        Assert.assertEquals(expected.length(), entity.getContentLength());
+
+        // read in small chunks to cross the event and line breaker boundaries
+        InputStream in = entity.getContent();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[3];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) != -1) {
+            out.write(buf, 0, n);
+        }
+        Assert.assertEquals(expected, out.toString());
+        Assert.assertEquals(-1, in.read());
+
+        in = entity.getContent();
+        Assert.assertEquals('n', in.read());
+        Assert.assertEquals('i', in.read());
+        Assert.assertEquals('#', in.read());
+
+        Assert.assertEquals(-1, RawEventBatch.factory().build().getHttpEntity().getContent().read());
+    }
 }
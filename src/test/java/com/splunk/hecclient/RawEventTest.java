@@ -16,10 +16,13 @@
 package com.splunk.hecclient;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -93,6 +96,106 @@ public class RawEventTest {
         }
     }
 
+    @Test
+    public void getBytesFromByteBuffer() {
+        // heap buffer spanning the whole array is not copied
+        byte[] bytes = "ni hao".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer whole = ByteBuffer.wrap(bytes);
+        Event event = new RawEvent(whole, null);
+        Assert.assertSame(bytes, event.getBytes());
+        Assert.assertEquals(0, whole.position());
+
+        // slice of a heap buffer
+        ByteBuffer slice = ByteBuffer.wrap(bytes, 3, 3);
+        event = new RawEvent(slice, null);
+        Assert.assertEquals("hao", new String(event.getBytes(), StandardCharsets.UTF_8));
+        Assert.assertEquals(3, slice.position());
+
+        // direct buffer
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        event = new RawEvent(direct, null);
+        Assert.assertEquals("ni hao", new String(event.getBytes(), StandardCharsets.UTF_8));
+        Assert.assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void streamByteBuffer() throws IOException {
+        byte[] bytes = "ni hao".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        EventBatch batch = RawEventBatch.factory().build();
+        batch.setEnableStreaming(true);
+        batch.add(new RawEvent(ByteBuffer.wrap(bytes, 3, 3), null).setLineBreaker("|"));
+        batch.add(new RawEvent(direct, null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batch.getHttpEntity().writeTo(out);
+        Assert.assertEquals("hao|ni hao", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void lineBreakerBytes() {
+        RawEvent event = new RawEvent("ni", null);
+        Assert.assertEquals(0, event.lineBreakerBytes.length);
+
+        event.setLineBreaker("\n");
+        Assert.assertSame(Event.NEW_LINE, event.lineBreakerBytes);
+
+        // encoded as UTF-8 and shared between events using the same line breaker
+        event.setLineBreaker("\u00a7\u00a7");
+        Assert.assertArrayEquals("\u00a7\u00a7".getBytes(StandardCharsets.UTF_8), event.lineBreakerBytes);
+        Assert.assertEquals(6, event.length());
+
+        RawEvent other = new RawEvent("hao", null);
+        other.setLineBreaker(new String("\u00a7\u00a7"));
+        Assert.assertSame(event.lineBreakerBytes, other.lineBreakerBytes);
+    }
+
+    @Test
+    public void writeToWithoutAllocation() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean)) {
+            return;
+        }
+        ThreadMXBean threads = (ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        RawEvent event = new RawEvent("hello world", null);
+        event.setLineBreaker("####");
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        final int count = 100000;
+        long length = 0;
+        for (int i = 0; i < count; i++) {
+            event.writeTo(out);
+            length += event.length();
+        }
+
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < count; i++) {
+            event.writeTo(out);
+            length += event.length();
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+        Assert.assertEquals(2L * count * 15, length);
+        // sending an event whose bytes are already calculated doesn't allocate, leave room for the measurement itself
+        Assert.assertTrue("allocated " + allocated + " bytes", allocated < count);
+    }
+
     @Test
     public void toStr() {
         // String payload
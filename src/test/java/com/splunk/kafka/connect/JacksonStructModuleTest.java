@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.kafka.connect;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+public class JacksonStructModuleTest {
+    @Test
+    public void sameAsMapSerialization() throws IOException {
+        Schema child = SchemaBuilder.struct()
+                .field("name", Schema.STRING_SCHEMA)
+                .field("age", Schema.OPTIONAL_INT32_SCHEMA)
+                .build();
+        Schema schema = SchemaBuilder.struct()
+                .field("i8", Schema.INT8_SCHEMA)
+                .field("i16", Schema.INT16_SCHEMA)
+                .field("i32", Schema.INT32_SCHEMA)
+                .field("i64", Schema.INT64_SCHEMA)
+                .field("f32", Schema.FLOAT32_SCHEMA)
+                .field("f64", Schema.FLOAT64_SCHEMA)
+                .field("bool", Schema.BOOLEAN_SCHEMA)
+                .field("str", Schema.STRING_SCHEMA)
+                .field("bytes", Schema.BYTES_SCHEMA)
+                .field("decimal", Decimal.schema(2))
+                .field("timestamp", Timestamp.SCHEMA)
+                .field("date", org.apache.kafka.connect.data.Date.SCHEMA)
+                .field("time", Time.SCHEMA)
+                .field("optional", Schema.OPTIONAL_STRING_SCHEMA)
+                .field("defaulted", SchemaBuilder.string().optional().defaultValue("default").build())
+                .field("array", SchemaBuilder.array(child).build())
+                .field("map", SchemaBuilder.map(Schema.STRING_SCHEMA, Schema.OPTIONAL_INT64_SCHEMA).build())
+                .field("intMap", SchemaBuilder.map(Schema.INT32_SCHEMA, Schema.STRING_SCHEMA).build())
+                .field("child", child)
+                .build();
+
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("one", 1L);
+        map.put("none", null);
+        Struct struct = new Struct(schema)
+                .put("i8", (byte) -8)
+                .put("i16", (short) 16)
+                .put("i32", 32)
+                .put("i64", 1L << 40)
+                .put("f32", 3.25f)
+                .put("f64", 1.0E-7)
+                .put("bool", true)
+                .put("str", "quote \" and \u00e9")
+                .put("bytes", new byte[]{0, 1, 2, (byte) 255})
+                .put("decimal", new BigDecimal("12345.67"))
+                .put("timestamp", new Date(1524838717123L))
+                .put("date", new Date(1524787200000L))
+                .put("time", new Date(51517123L))
+                .put("array", Arrays.asList(new Struct(child).put("name", "a").put("age", 4), null,
+                        new Struct(child).put("name", "b")))
+                .put("map", map)
+                .put("intMap", Collections.singletonMap(7, "seven"))
+                .put("child", new Struct(child).put("name", "c").put("age", 9));
+
+        String expected = mapper(new LegacyStructSerializer()).writeValueAsString(struct);
+        String actual = mapper(new JacksonStructModule.StructSerializer()).writeValueAsString(struct);
+        Assert.assertEquals(expected, actual);
+        Assert.assertTrue(actual, actual.contains("\"defaulted\":\"default\",\"array\":[{\"name\":\"a\",\"age\":4},null,"));
+    }
+
+    @Test
+    public void cacheWritersBySchema() throws IOException {
+        Schema schema = SchemaBuilder.struct().field("name", Schema.STRING_SCHEMA).build();
+        Schema other = SchemaBuilder.struct().field("id", Schema.INT64_SCHEMA).build();
+        JacksonStructModule.StructSerializer serializer = new JacksonStructModule.StructSerializer();
+        ObjectMapper mapper = mapper(serializer);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("{\"name\":\"n\"}", mapper.writeValueAsString(new Struct(schema).put("name", "n")));
+            Assert.assertEquals("{\"id\":" + i + "}", mapper.writeValueAsString(new Struct(other).put("id", (long) i)));
+        }
+        Assert.assertEquals(2, serializer.cachedSchemas());
+        Assert.assertSame(serializer.writerFor(schema), serializer.writerFor(schema));
+
+        for (int i = 0; i < JacksonStructModule.StructSerializer.MAX_CACHED_SCHEMAS + 1; i++) {
+            serializer.writerFor(SchemaBuilder.struct().field("id", Schema.INT64_SCHEMA).build());
+        }
+        Assert.assertTrue(serializer.cachedSchemas() <= JacksonStructModule.StructSerializer.MAX_CACHED_SCHEMAS);
+    }
+
+    private static ObjectMapper mapper(JsonSerializer<Struct> serializer) {
+        ObjectMapper mapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Struct.class, serializer);
+        mapper.registerModule(module);
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mapper.setDateFormat(df);
+        return mapper;
+    }
+
+    // the map based serialization the compiled writers replace
+    private static final class LegacyStructSerializer extends JsonSerializer<Struct> {
+        @Override
+        public void serialize(Struct struct, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            final Map<String, Object> result = new LinkedHashMap<>(struct.schema().fields().size());
+            for (Field field : struct.schema().fields()) {
+                result.put(field.name(), struct.get(field));
+            }
+            jsonGenerator.writeObject(result);
+        }
+    }
+}
@@ -284,6 +284,154 @@ public class SplunkSinkConnectorConfigTest {
         Assert.assertEquals("\t", connectorConfig.lineBreaker);
     }
 
+    @Test
+    public void createWithCompressionCodec() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        SplunkSinkConnectorConfig connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals("gzip", connectorConfig.compressionCodec);
+        Assert.assertEquals(-1, connectorConfig.compressionLevel);
+
+        config.put(SplunkSinkConnectorConfig.COMPRESSION_CODEC_CONF, "gzip");
+        config.put(SplunkSinkConnectorConfig.COMPRESSION_LEVEL_CONF, "1");
+        connectorConfig = new SplunkSinkConnectorConfig(config);
+        HecConfig hecConfig = connectorConfig.getHecConfig();
+        Assert.assertEquals("gzip", hecConfig.getCompressionCodec());
+        Assert.assertEquals(1, hecConfig.getCompressionLevel());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithUnknownCompressionCodec() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.COMPRESSION_CODEC_CONF, "snappy");
+        new SplunkSinkConnectorConfig(config);
+    }
+
+    @Test
+    public void createWithLbPolicy() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        SplunkSinkConnectorConfig connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals("round_robin", connectorConfig.lbPolicy);
+
+        config.put(SplunkSinkConnectorConfig.LB_POLICY_CONF, "least_outstanding");
+        connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals("least_outstanding", connectorConfig.getHecConfig().getLbPolicy());
+    }
+
+    @Test
+    public void createWithAsyncSendThreads() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        SplunkSinkConnectorConfig connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals(32, connectorConfig.getHecConfig().getAsyncSendThreads());
+
+        config.put(SplunkSinkConnectorConfig.ASYNC_SEND_THREADS_CONF, "4");
+        connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals(4, connectorConfig.asyncSendThreads);
+        Assert.assertEquals(4, connectorConfig.getHecConfig().getAsyncSendThreads());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithInvalidAsyncSendThreads() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.ASYNC_SEND_THREADS_CONF, "0");
+        new SplunkSinkConnectorConfig(config);
+    }
+
+    @Test
+    public void createWithHealthCheckTimeout() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        SplunkSinkConnectorConfig connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals(5, connectorConfig.getHecConfig().getHealthCheckTimeout());
+
+        config.put(SplunkSinkConnectorConfig.LB_HEALTH_CHECK_TIMEOUT_CONF, "2");
+        connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertEquals(2, connectorConfig.lbHealthCheckTimeout);
+        Assert.assertEquals(2, connectorConfig.getHecConfig().getHealthCheckTimeout());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithInvalidHealthCheckTimeout() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.LB_HEALTH_CHECK_TIMEOUT_CONF, "0");
+        new SplunkSinkConnectorConfig(config);
+    }
+
+    @Test
+    public void createWithRateControl() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        SplunkSinkConnectorConfig connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertFalse(connectorConfig.getHecConfig().getEnableRateControl());
+
+        config.put(SplunkSinkConnectorConfig.ENABLE_RATE_CONTROL_CONF, "true");
+        connectorConfig = new SplunkSinkConnectorConfig(config);
+        Assert.assertTrue(connectorConfig.enableRateControl);
+        Assert.assertTrue(connectorConfig.getHecConfig().getEnableRateControl());
+    }
+
+    @Test
+    public void createWithCircuitBreaker() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.CIRCUIT_BREAKER_FAILURES_CONF, "5");
+        config.put(SplunkSinkConnectorConfig.CIRCUIT_BREAKER_ERROR_RATE_CONF, "50");
+        config.put(SplunkSinkConnectorConfig.CIRCUIT_BREAKER_OPEN_SECONDS_CONF, "10");
+        HecConfig hecConfig = new SplunkSinkConnectorConfig(config).getHecConfig();
+        Assert.assertEquals(5, hecConfig.getCircuitBreakerFailures());
+        Assert.assertEquals(50, hecConfig.getCircuitBreakerErrorRate());
+        Assert.assertEquals(10, hecConfig.getCircuitBreakerOpenSeconds());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithInvalidCircuitBreakerErrorRate() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.CIRCUIT_BREAKER_ERROR_RATE_CONF, "101");
+        new SplunkSinkConnectorConfig(config);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithUnknownLbPolicy() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.LB_POLICY_CONF, "random");
+        new SplunkSinkConnectorConfig(config);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithInvalidCompressionLevel() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.COMPRESSION_LEVEL_CONF, "10");
+        new SplunkSinkConnectorConfig(config);
+    }
+
+    @Test
+    public void createWithTimestampFieldPath() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.ENABLE_TIMESTAMP_EXTRACTION_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.TIMESTAMP_FIELD_PATH_CONF, " $.meta.ts ");
+        SplunkSinkConnectorConfig connectorConfig = new SplunkSinkConnectorConfig(config);
+        // no regex is needed with a field path
+        Assert.assertEquals("$.meta.ts", connectorConfig.timestampFieldPath);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void createWithInvalidTimestampFieldPath() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.ENABLE_TIMESTAMP_EXTRACTION_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.TIMESTAMP_FIELD_PATH_CONF, "$.meta..ts");
+        new SplunkSinkConnectorConfig(config);
+    }
+
     @Test
     public void toStr() {
         UnitUtil uu = new UnitUtil(0);
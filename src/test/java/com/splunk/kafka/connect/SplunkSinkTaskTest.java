@@ -15,6 +15,8 @@
  */
 package com.splunk.kafka.connect;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.splunk.hecclient.Event;
 import com.splunk.hecclient.EventBatch;
 import com.splunk.hecclient.RawEventBatch;
@@ -28,6 +30,9 @@ import org.apache.kafka.connect.sink.SinkRecord;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -459,6 +464,192 @@ public class SplunkSinkTaskTest {
         putWithSuccess(true, false);
     }
 
+    @Test
+    public void putWithFormattedEvents() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.RAW_CONF, String.valueOf(false));
+        config.put(SplunkSinkConnectorConfig.ACK_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.MAX_BATCH_SIZE_CONF, String.valueOf(4));
+        config.put(SplunkSinkConnectorConfig.HEC_EVENT_FORMATTED_CONF, String.valueOf(true));
+
+        SplunkSinkTask task = new SplunkSinkTask();
+        HecMock hec = new HecMock(task);
+        hec.setSendReturnResult(HecMock.success);
+        task.setHec(hec);
+        task.start(config);
+
+        String formatted = "{\"event\":\"hello\",\"index\":\"main\",\"sourcetype\":\"st\",\"time\":1.5}";
+        byte[] bytes = formatted.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[bytes.length + 2];
+        System.arraycopy(bytes, 0, padded, 1, bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 1, bytes.length);
+
+        List<SinkRecord> records = new ArrayList<>();
+        Object[] values = {formatted, bytes, buffer, "not a hec event"};
+        for (int i = 0; i < values.length; i++) {
+            records.add(new SinkRecord(uu.configProfile.getTopics(), 1, null, "test", null, values[i], i, 0L, TimestampType.NO_TIMESTAMP_TYPE));
+        }
+        task.put(records);
+
+        Assert.assertEquals(1, hec.getBatches().size());
+        List<Event> events = hec.getBatches().get(0).getEvents();
+        Assert.assertEquals(4, events.size());
+        for (int i = 0; i < 3; i++) {
+            Event event = events.get(i);
+            Assert.assertEquals("hello", event.getEvent());
+            Assert.assertEquals("main", event.getIndex());
+            Assert.assertEquals("st", event.getSourcetype());
+            Assert.assertEquals(new Double(1.5), event.getTime());
+            Assert.assertSame(records.get(i), event.getTied());
+        }
+        // the buffer position is left untouched
+        Assert.assertEquals(1, buffer.position());
+        // events not in HEC format fall back to the non formatted path
+        Assert.assertEquals("not a hec event", events.get(3).getEvent());
+        task.stop();
+    }
+
+    @Test
+    public void putWithFormattedEventsPassthrough() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.RAW_CONF, String.valueOf(false));
+        config.put(SplunkSinkConnectorConfig.ACK_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.MAX_BATCH_SIZE_CONF, String.valueOf(3));
+        config.put(SplunkSinkConnectorConfig.HEC_EVENT_FORMATTED_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.HEC_EVENT_FORMATTED_PASSTHROUGH_CONF, String.valueOf(true));
+
+        SplunkSinkTask task = new SplunkSinkTask();
+        HecMock hec = new HecMock(task);
+        hec.setSendReturnResult(HecMock.success);
+        task.setHec(hec);
+        task.start(config);
+
+        String formatted = "{\"event\":{\"k\":\"v\"},\"index\":\"main\"}";
+        Object[] values = {
+                formatted.getBytes(StandardCharsets.UTF_8),
+                // the enrichment would overwrite a field of the event, so it is deserialized instead
+                "{\"event\":\"e\",\"fields\":{\"ni\":\"ma\"}}",
+                "not a hec event",
+        };
+        List<SinkRecord> records = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            records.add(new SinkRecord(uu.configProfile.getTopics(), 1, null, "test", null, values[i], i, 0L, TimestampType.NO_TIMESTAMP_TYPE));
+        }
+        task.put(records);
+
+        Assert.assertEquals(1, hec.getBatches().size());
+        List<Event> events = hec.getBatches().get(0).getEvents();
+        Assert.assertEquals(3, events.size());
+        for (Event event: events) {
+            Map<String, String> fields = event.getFields();
+            Assert.assertEquals("world", fields.get("hello"));
+            Assert.assertEquals("hao", fields.get("ni"));
+            Assert.assertEquals("0", fields.get("kafka_timestamp"));
+            Assert.assertEquals(uu.configProfile.getTopics(), fields.get("kafka_topic"));
+            Assert.assertEquals("test", fields.get("kafka_record_key"));
+        }
+
+        String forwarded = new String(events.get(0).getBytes(), StandardCharsets.UTF_8);
+        Assert.assertTrue(forwarded, forwarded.startsWith("{\"event\":{\"k\":\"v\"},\"index\":\"main\",\"fields\":{"));
+        Assert.assertTrue(forwarded, forwarded.contains("\"kafka_offset\":\"0\""));
+        Assert.assertEquals("main", events.get(0).getIndex());
+        Assert.assertSame(records.get(0), events.get(0).getTied());
+        Assert.assertEquals("e", events.get(1).getEvent());
+        Assert.assertEquals("not a hec event", events.get(2).getEvent());
+        task.stop();
+    }
+
+    @Test
+    public void putWithSharedMetadata() {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.RAW_CONF, String.valueOf(false));
+        config.put(SplunkSinkConnectorConfig.ACK_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.MAX_BATCH_SIZE_CONF, String.valueOf(3));
+        config.put(SplunkSinkConnectorConfig.TRACK_DATA_CONF, String.valueOf(false));
+        config.put(SplunkSinkConnectorConfig.HEADER_SUPPORT_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.HEADER_INDEX_CONF, "index");
+        config.put(SplunkSinkConnectorConfig.USE_RECORD_TIMESTAMP_CONF, String.valueOf(true));
+
+        SplunkSinkTask task = new SplunkSinkTask();
+        HecMock hec = new HecMock(task);
+        hec.setSendReturnResult(HecMock.success);
+        task.setHec(hec);
+        task.start(config);
+
+        List<SinkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            SinkRecord record = new SinkRecord(uu.configProfile.getTopics(), 1, null, "test", null, "ni, hao", i, 1000L + i, TimestampType.CREATE_TIME);
+            record.headers().addString("index", new String("header-index"));
+            records.add(record);
+        }
+        task.put(records);
+
+        Assert.assertEquals(1, hec.getBatches().size());
+        List<Event> events = hec.getBatches().get(0).getEvents();
+        Assert.assertEquals(3, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            Assert.assertEquals("header-index", event.getIndex());
+            Assert.assertSame(events.get(0).getIndex(), event.getIndex());
+            Assert.assertEquals("world", event.getFields().get("hello"));
+            Assert.assertSame(events.get(0).getFields(), event.getFields());
+            Assert.assertEquals(1.0 + i / 1000.0, event.getTime(), 0);
+        }
+        task.stop();
+    }
+
+    @Test
+    public void sharedHeaderMetaEvictsLeastRecentlyUsed() {
+        SplunkSinkTask task = new SplunkSinkTask();
+        String frequent = task.sharedHeaderMeta(new StringBuilder("main"));
+        String rare = task.sharedHeaderMeta(new StringBuilder("rare"));
+        for (int i = 0; i < SplunkSinkTask.MAX_SHARED_HEADER_METAS; i++) {
+            Assert.assertSame(frequent, task.sharedHeaderMeta(new StringBuilder("main")));
+            task.sharedHeaderMeta("host-" + i);
+        }
+
+        // the value in use is kept when the cache is full, the one not used since is evicted
+        Assert.assertSame(frequent, task.sharedHeaderMeta(new StringBuilder("main")));
+        Assert.assertNotSame(rare, task.sharedHeaderMeta(new StringBuilder("rare")));
+    }
+
+    @Test
+    public void putWithTrackedFields() throws IOException {
+        UnitUtil uu = new UnitUtil(0);
+        Map<String, String> config = uu.createTaskConfig();
+        config.put(SplunkSinkConnectorConfig.RAW_CONF, String.valueOf(false));
+        config.put(SplunkSinkConnectorConfig.ACK_CONF, String.valueOf(true));
+        config.put(SplunkSinkConnectorConfig.MAX_BATCH_SIZE_CONF, String.valueOf(2));
+        config.put(SplunkSinkConnectorConfig.TRACK_DATA_CONF, String.valueOf(true));
+
+        SplunkSinkTask task = new SplunkSinkTask();
+        HecMock hec = new HecMock(task);
+        hec.setSendReturnResult(HecMock.success);
+        task.setHec(hec);
+        task.start(config);
+        task.put(createSinkRecords(2, 5, "ni, hao"));
+
+        Assert.assertEquals(1, hec.getBatches().size());
+        List<Event> events = hec.getBatches().get(0).getEvents();
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 0; i < events.size(); i++) {
+            Map<String, String> fields = events.get(i).getFields();
+            Assert.assertEquals("world", fields.get("hello"));
+            Assert.assertEquals(String.valueOf(5 + i), fields.get("kafka_offset"));
+            Assert.assertEquals(uu.configProfile.getTopics(), fields.get("kafka_topic"));
+
+            JsonNode serialized = mapper.readTree(events.get(i).getBytes()).get("fields");
+            Assert.assertEquals(fields.size(), serialized.size());
+            for (Map.Entry<String, String> field: fields.entrySet()) {
+                Assert.assertEquals(field.getValue(), serialized.get(field.getKey()).asText());
+            }
+        }
+        task.stop();
+    }
+
     private void putWithSuccess(boolean raw, boolean withMeta) {
         int batchSize = 100;
         int total = 1000;
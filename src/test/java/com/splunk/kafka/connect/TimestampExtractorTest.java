@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.kafka.connect;
+
+import com.splunk.hecclient.Event;
+import com.splunk.hecclient.JsonEvent;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TimestampExtractorTest {
+    private static final String REGEX = "\\\"ts\\\":\\s*\\\"(?<time>.*?)\"";
+
+    @Test
+    public void extractEpoch() {
+        TimestampExtractor extractor = new TimestampExtractor(REGEX, "", "epoch", "");
+        String[] timestamps = {"1693801816", "1693801816993", "1693801816993123", "1693801816993123456"};
+        for (String ts: timestamps) {
+            Event event = new JsonEvent("{\"id\":1,\"ts\":\"" + ts + "\"}", null);
+            extractor.extract(event);
+            double expected = ts.length() == 10 ? 1693801816.0 : 1693801816.993;
+            Assert.assertEquals(ts, expected, event.getTime(), 0.001);
+        }
+
+        // raw bytes are matched without being decoded
+        Event event = new JsonEvent(("{\"ts\": \"1693801816993\"}").getBytes(StandardCharsets.UTF_8), null);
+        extractor.extract(event);
+        Assert.assertEquals(1.693801816993E9, event.getTime(), 0);
+
+        // no match leaves the time untouched
+        event = new JsonEvent("{\"time\":\"1693801816\"}", null);
+        extractor.extract(event);
+        Assert.assertNull(event.getTime());
+    }
+
+    @Test
+    public void epochSeconds() {
+        String[] timestamps = {"0", "000123", "1693801816", "1693801816993", "1693801816993123456",
+                "1693801816.993", "-1693801816993", "12345678901234567890"};
+        for (String ts: timestamps) {
+            // same conversion as done on the parsed timestamp
+            double epoch = Double.parseDouble(ts);
+            double expected = epoch / Math.pow(10, Long.toString(Double.valueOf(epoch).longValue()).length() - 10.00);
+            String data = "ts=" + ts + ";";
+            Assert.assertEquals(ts, expected, TimestampExtractor.epochSeconds(data, 3, data.length() - 1), 0);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void epochSecondsInvalid() {
+        TimestampExtractor.epochSeconds("12ab", 0, 4);
+    }
+
+    @Test
+    public void extractFormatted() {
+        TimestampExtractor extractor = new TimestampExtractor(REGEX, "", "yyyyMMddHHmmssSSS", "Asia/Seoul");
+        for (int i = 0; i < 2; i++) {
+            Event event = new JsonEvent("{\"ts\": \"20230904133016993\"}", null);
+            extractor.extract(event);
+            Assert.assertEquals(1.693801816993E9, event.getTime(), 0);
+        }
+
+        extractor = new TimestampExtractor(REGEX, "", "yyyyMMddHHmmssSSS zzz", "");
+        Event event = new JsonEvent("{\"ts\": \"20230904133016993 UTC\"}", null);
+        extractor.extract(event);
+        Assert.assertEquals(1.693834216993E9, event.getTime(), 0);
+
+        event = new JsonEvent("{\"ts\": \"Sep 04 2023\"}", null);
+        extractor.extract(event);
+        Assert.assertNull(event.getTime());
+    }
+
+    @Test
+    public void extractFromJsonField() {
+        TimestampExtractor extractor = new TimestampExtractor("", "$.meta.ts", "epoch", "");
+        String[] events = {
+                "{\"meta\":{\"ts\":1693801816993}}",
+                "{\"ts\":1,\"skip\":{\"meta\":{\"ts\":2}},\"list\":[{\"ts\":3}],\"meta\":{\"id\":\"x\",\"ts\":\"1693801816993\"},\"bad json",
+        };
+        for (String data: events) {
+            Event event = new JsonEvent(data, null);
+            extractor.extract(event);
+            Assert.assertEquals(data, 1.693801816993E9, event.getTime(), 0);
+
+            event = new JsonEvent(data.getBytes(StandardCharsets.UTF_8), null);
+            extractor.extract(event);
+            Assert.assertEquals(data, 1.693801816993E9, event.getTime(), 0);
+        }
+
+        String[] missing = {
+                "{\"meta\":{\"id\":1},\"ts\":1693801816993}",
+                "{\"meta\":1693801816993}",
+                "{\"meta\":{\"ts\":null}}",
+                "[{\"meta\":{\"ts\":1693801816993}}]",
+                "not json",
+        };
+        for (String data: missing) {
+            Event event = new JsonEvent(data, null);
+            extractor.extract(event);
+            Assert.assertNull(data, event.getTime());
+        }
+
+        extractor = new TimestampExtractor("", "meta.ts", "yyyyMMddHHmmssSSS", "Asia/Seoul");
+        Event event = new JsonEvent("{\"meta\":{\"ts\":\"20230904133016993\"}}", null);
+        extractor.extract(event);
+        Assert.assertEquals(1.693801816993E9, event.getTime(), 0);
+    }
+
+    @Test
+    public void extractFromStructField() {
+        Schema metaSchema = SchemaBuilder.struct()
+                .field("ts", Timestamp.SCHEMA)
+                .field("epoch", Schema.INT64_SCHEMA)
+                .build();
+        Schema schema = SchemaBuilder.struct()
+                .field("id", Schema.STRING_SCHEMA)
+                .field("meta", metaSchema)
+                .build();
+        Struct struct = new Struct(schema)
+                .put("id", "x")
+                .put("meta", new Struct(metaSchema).put("ts", new Date(1693801816993L)).put("epoch", 1693801816L));
+
+        Event event = new JsonEvent(struct, null);
+        new TimestampExtractor("", "$.meta.ts", "epoch", "").extract(event);
+        Assert.assertEquals(1.693801816993E9, event.getTime(), 0);
+
+        event = new JsonEvent(struct, null);
+        new TimestampExtractor("", "$.meta.epoch", "epoch", "").extract(event);
+        Assert.assertEquals(1.693801816E9, event.getTime(), 0);
+
+        event = new JsonEvent(struct, null);
+        new TimestampExtractor("", "$.id.ts", "epoch", "").extract(event);
+        Assert.assertNull(event.getTime());
+    }
+
+    @Test
+    public void extractFromMapField() {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("ts", 1693801816993L);
+        Map<String, Object> data = new HashMap<>();
+        data.put("meta", meta);
+
+        Event event = new JsonEvent(data, null);
+        new TimestampExtractor("", "$.meta.ts", "epoch", "").extract(event);
+        Assert.assertEquals(1.693801816993E9, event.getTime(), 0);
+
+        event = new JsonEvent(data, null);
+        new TimestampExtractor("", "$.other.ts", "epoch", "").extract(event);
+        Assert.assertNull(event.getTime());
+    }
+
+    @Test
+    public void parseFieldPath() {
+        Assert.assertArrayEquals(new String[]{"meta", "ts"}, TimestampExtractor.parseFieldPath("$.meta.ts"));
+        Assert.assertArrayEquals(new String[]{"meta", "ts"}, TimestampExtractor.parseFieldPath("meta.ts"));
+        Assert.assertArrayEquals(new String[]{"ts"}, TimestampExtractor.parseFieldPath("ts"));
+
+        String[] invalid = {"$", "$.", "meta.", ".ts", "meta..ts", "$.$.ts"};
+        for (String path: invalid) {
+            try {
+                TimestampExtractor.parseFieldPath(path);
+                Assert.fail(path);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void byteCharSequence() {
+        byte[] data = "xhello worldx".getBytes(StandardCharsets.UTF_8);
+        CharSequence seq = new TimestampExtractor.ByteCharSequence(data, 1, data.length - 2);
+        Assert.assertEquals(11, seq.length());
+        Assert.assertEquals('h', seq.charAt(0));
+        Assert.assertEquals("hello world", seq.toString());
+        Assert.assertEquals("world", seq.subSequence(6, 11).toString());
+    }
+
+    @Test
+    public void extractFromUtf8Bytes() {
+        TimestampExtractor extractor = new TimestampExtractor("\"zeit\u00e4\":\\s*\"(?<time>\\d+)\"", "", "epoch", "");
+        byte[] data = "{\"zeit\u00e4\": \"1693801816\", \"msg\": \"gr\u00fc\u00dfe\"}".getBytes(StandardCharsets.UTF_8);
+        Event event = new JsonEvent(data, null);
+        extractor.extract(event);
+        Assert.assertEquals(1693801816.0, event.getTime(), 0);
+    }
+}